@@ -15,6 +15,8 @@
  */
 package io.github.pellse.decorator;
 
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -22,6 +24,7 @@ import java.util.function.Supplier;
 import io.github.pellse.decorator.aop.DelegateInvocationHandler;
 import io.github.pellse.decorator.proxy.DelegateGenerator;
 import io.github.pellse.decorator.proxy.bytebuddy.ByteBuddyClassDelegateGenerator;
+import io.github.pellse.decorator.util.function.CheckedSupplier;
 
 public interface Decorator<I, T extends I> {
 
@@ -34,6 +37,16 @@ public interface Decorator<I, T extends I> {
 	<D extends I> Decorator<I, D> with(Class<D> generatedType, Object[] constructorArgs, Class<?>[] constructorArgTypes);
 	<D extends I> Decorator<I, D> with(Supplier<D> delegateSupplier);
 
+	/**
+	 * Adds a handler layer that can be switched on and off at runtime, the default implementation
+	 * checks the toggle in front of the handler
+	 */
+	default Decorator<I, I> with(DelegateInvocationHandler<I> delegateHandler, LayerToggle toggle) {
+		return with((delegate, method, args) -> toggle.isEnabled() ? delegateHandler.invoke(delegate, method, args) : invokeAndUnwrap(delegate, method, args));
+	}
+
+	Decorator<I, I> with(Function<? super T, ? extends I> delegateFactory, LayerToggle toggle);
+
 	<R extends I> R make();
 
 	static <I, T extends I> Decorator<I, T> of(T rootObject, Class<I> delegateInterface) {
@@ -51,4 +64,33 @@ public interface Decorator<I, T extends I> {
 	static <I, T extends I> Decorator<I, T> of(T rootObject, Class<I> delegateInterface, DelegateGenerator<I> generator, ClassLoader classLoader) {
 		return new GeneratedDecorator<>(rootObject, delegateInterface, generator, classLoader);
 	}
+
+	static <I, T extends I> Decorator<I, T> of(T rootObject, Class<I> delegateInterface, DecoratorRegistry registry) {
+		return registry.of(rootObject, delegateInterface);
+	}
+
+	static <I, T extends I> Decorator<I, I> ofLazy(Supplier<T> rootObjectSupplier, Class<I> delegateInterface) {
+		return ofLazy(rootObjectSupplier, delegateInterface, new ByteBuddyClassDelegateGenerator<>());
+	}
+
+	static <I, T extends I> Decorator<I, I> ofLazy(Supplier<T> rootObjectSupplier, Class<I> delegateInterface, DelegateGenerator<I> generator) {
+		return ofLazy(rootObjectSupplier, delegateInterface, generator, Decorator.class.getClassLoader());
+	}
+
+	static <I, T extends I> Decorator<I, I> ofLazy(Supplier<T> rootObjectSupplier, Class<I> delegateInterface, DelegateGenerator<I> generator, ClassLoader classLoader) {
+		return ofLazy(rootObjectSupplier, delegateInterface, generator, classLoader, DecoratorRegistry.getDefault());
+	}
+
+	static <I, T extends I> Decorator<I, I> ofLazy(Supplier<T> rootObjectSupplier, Class<I> delegateInterface, DecoratorRegistry registry) {
+		return registry.ofLazy(rootObjectSupplier, delegateInterface);
+	}
+
+	static <I, T extends I> Decorator<I, I> ofLazy(Supplier<T> rootObjectSupplier,
+			Class<I> delegateInterface,
+			DelegateGenerator<I> generator,
+			ClassLoader classLoader,
+			DecoratorRegistry registry) {
+		I lazyRootObject = CheckedSupplier.of(() -> generator.generateLazyDelegate(rootObjectSupplier, delegateInterface, classLoader)).get();
+		return new GeneratedDecorator<>(null, lazyRootObject, delegateInterface, generator, classLoader, registry);
+	}
 }
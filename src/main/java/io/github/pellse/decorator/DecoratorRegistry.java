@@ -0,0 +1,161 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import io.github.pellse.decorator.proxy.DelegateGenerator;
+import io.github.pellse.decorator.proxy.bytebuddy.ByteBuddyClassDelegateGenerator;
+import io.github.pellse.decorator.util.reflection.DelegateInstantiationInfo;
+
+/**
+ * Owns the generator, the class loader and the caches used to build decorators,
+ * everything generated through a registry created with {@link #create()} is released when the registry is closed
+ * and can be garbage collected once the decorated instances are no longer referenced.
+ *
+ * <pre>
+ * try (DecoratorRegistry registry = DecoratorRegistry.create(tenantClassLoader)) {
+ *	List&lt;String&gt; list = Decorator.of(new ArrayList&lt;&gt;(), List.class, registry)
+ *		.with(SafeList.class)
+ *		.make();
+ * }
+ * </pre>
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public final class DecoratorRegistry implements AutoCloseable {
+
+	private static final DecoratorRegistry DEFAULT = new DecoratorRegistry(new ByteBuddyClassDelegateGenerator<>(), Decorator.class.getClassLoader(), false);
+
+	private final ByteBuddyClassDelegateGenerator<Object> generator;
+	private final ClassLoader classLoader;
+	private final boolean closeable;
+
+	private volatile InstantiationInfoCache instantiationInfoCache = new InstantiationInfoCache();
+
+	private volatile boolean closed;
+
+	private DecoratorRegistry(ByteBuddyClassDelegateGenerator<Object> generator, ClassLoader classLoader, boolean closeable) {
+		this.generator = generator;
+		this.classLoader = classLoader;
+		this.closeable = closeable;
+	}
+
+	public static DecoratorRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	public static DecoratorRegistry create() {
+		return create(Decorator.class.getClassLoader());
+	}
+
+	public static DecoratorRegistry create(ClassLoader parentClassLoader) {
+		return create(parentClassLoader, new ByteBuddyClassDelegateGenerator<>());
+	}
+
+	public static DecoratorRegistry create(ClassLoader parentClassLoader, ByteBuddyClassDelegateGenerator<Object> generator) {
+		return new DecoratorRegistry(generator.withPrivateCache(), new RegistryClassLoader(parentClassLoader), true);
+	}
+
+	public <I, T extends I> Decorator<I, T> of(T rootObject, Class<I> delegateInterface) {
+		return new GeneratedDecorator<>(null, rootObject, delegateInterface, getGenerator(), getClassLoader(), this);
+	}
+
+	public <I, T extends I> Decorator<I, I> ofLazy(Supplier<T> rootObjectSupplier, Class<I> delegateInterface) {
+		return Decorator.ofLazy(rootObjectSupplier, delegateInterface, getGenerator(), getClassLoader(), this);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <I> DelegateGenerator<I> getGenerator() {
+		checkNotClosed();
+		return (DelegateGenerator<I>) (DelegateGenerator<?>) generator;
+	}
+
+	public ClassLoader getClassLoader() {
+		checkNotClosed();
+		return classLoader;
+	}
+
+	public int getGeneratedClassCount() {
+		return generator.getCachedClassCount();
+	}
+
+	public int getCacheEntryCount() {
+		return getGeneratedClassCount() + instantiationInfoCache.size.get();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() {
+		if (!closeable)
+			throw new UnsupportedOperationException("The default DecoratorRegistry cannot be closed");
+
+		closed = true;
+		generator.clearCache();
+		instantiationInfoCache = new InstantiationInfoCache();
+	}
+
+	DelegateInstantiationInfo getDelegateInstantiationInfo(Class<?> type, Function<Class<?>, DelegateInstantiationInfo> instantiationInfoResolver) {
+		checkNotClosed();
+		return instantiationInfoCache.get(type).resolve(type, instantiationInfoResolver);
+	}
+
+	private void checkNotClosed() {
+		if (closed)
+			throw new IllegalStateException("DecoratorRegistry is closed");
+	}
+
+	/**
+	 * Stores the instantiation info in the generated classes themselves, the cache never prevents
+	 * a generated class from being unloaded, e.g. a hidden class generated through the default registry
+	 */
+	private static final class InstantiationInfoCache extends ClassValue<InstantiationInfoHolder> {
+
+		private final AtomicInteger size = new AtomicInteger();
+
+		@Override
+		protected InstantiationInfoHolder computeValue(Class<?> type) {
+			size.incrementAndGet();
+			return new InstantiationInfoHolder();
+		}
+	}
+
+	private static final class InstantiationInfoHolder {
+
+		private volatile DelegateInstantiationInfo instantiationInfo;
+
+		DelegateInstantiationInfo resolve(Class<?> type, Function<Class<?>, DelegateInstantiationInfo> instantiationInfoResolver) {
+			DelegateInstantiationInfo info = instantiationInfo;
+			if (info == null)
+				instantiationInfo = info = instantiationInfoResolver.apply(type);
+
+			return info;
+		}
+	}
+
+	private static final class RegistryClassLoader extends ClassLoader {
+
+		RegistryClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+	}
+}
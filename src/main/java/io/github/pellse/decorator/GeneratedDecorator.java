@@ -19,14 +19,11 @@ import static io.github.pellse.decorator.util.reflection.ReflectionUtils.findDel
 import static io.github.pellse.decorator.util.reflection.ReflectionUtils.setFields;
 import static org.apache.commons.lang3.ClassUtils.toClass;
 
-import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
-import org.jctools.maps.NonBlockingHashMap;
-
 import io.github.pellse.decorator.aop.DelegateInvocationHandler;
 import io.github.pellse.decorator.proxy.DelegateGenerator;
 import io.github.pellse.decorator.proxy.bytebuddy.ByteBuddyClassDelegateGenerator;
@@ -37,12 +34,11 @@ import io.github.pellse.decorator.util.reflection.ReflectionUtils;
 
 public class GeneratedDecorator<I, T extends I> extends AbstractDecorator<I, T> {
 
-	private static final Map<Class<?>, DelegateInstantiationInfo> CACHE = new NonBlockingHashMap<>();
-
 	private final T delegateTarget;
 	private final Class<I> commonDelegateType;
 	private final DelegateGenerator<I> generator;
 	private final ClassLoader classLoader;
+	private final DecoratorRegistry registry;
 
 	public GeneratedDecorator(T delegate, Class<I> commonDelegateType, DelegateGenerator<I> delegateGeneratorFactory) {
 		this(delegate, commonDelegateType, delegateGeneratorFactory, GeneratedDecorator.class.getClassLoader());
@@ -60,11 +56,21 @@ public class GeneratedDecorator<I, T extends I> extends AbstractDecorator<I, T>
 			Class<I> commonDelegateType,
 			DelegateGenerator<I> generator,
 			ClassLoader classLoader) {
+		this(next, delegateTarget, commonDelegateType, generator, classLoader, DecoratorRegistry.getDefault());
+	}
+
+	public GeneratedDecorator(Decorator<I, ? extends I> next,
+			T delegateTarget,
+			Class<I> commonDelegateType,
+			DelegateGenerator<I> generator,
+			ClassLoader classLoader,
+			DecoratorRegistry registry) {
 		super(next);
 		this.delegateTarget = delegateTarget;
 		this.commonDelegateType = commonDelegateType;
 		this.generator = Optional.ofNullable(generator).orElseGet(ByteBuddyClassDelegateGenerator<I>::new);
 		this.classLoader = classLoader;
+		this.registry = Optional.ofNullable(registry).orElseGet(DecoratorRegistry::getDefault);
 	}
 
 	@Override
@@ -79,7 +85,7 @@ public class GeneratedDecorator<I, T extends I> extends AbstractDecorator<I, T>
 
 	@Override
 	public <D extends I> Decorator<I, D> with(Function<? super T, ? extends D> delegateFactory) {
-		return new GeneratedDecorator<>(this, delegateFactory.apply(delegateTarget), commonDelegateType, generator, classLoader);
+		return new GeneratedDecorator<>(this, delegateFactory.apply(delegateTarget), commonDelegateType, generator, classLoader, registry);
 	}
 
 	@Override
@@ -101,7 +107,18 @@ public class GeneratedDecorator<I, T extends I> extends AbstractDecorator<I, T>
 
 	@Override
 	public <D extends I> Decorator<I, D> with(Supplier<D> delegateSupplier) {
-		return new GeneratedDecorator<>(this, delegateSupplier.get(), commonDelegateType, generator, classLoader);
+		return new GeneratedDecorator<>(this, delegateSupplier.get(), commonDelegateType, generator, classLoader, registry);
+	}
+
+	@Override
+	public Decorator<I, I> with(DelegateInvocationHandler<I> delegateHandler, LayerToggle toggle) {
+		return with(delegate -> CheckedSupplier.of(() -> generator.generateDelegate(delegate, delegateHandler, commonDelegateType, commonDelegateType, classLoader)).get(), toggle);
+	}
+
+	@Override
+	public Decorator<I, I> with(Function<? super T, ? extends I> delegateFactory, LayerToggle toggle) {
+		I layer = delegateFactory.apply(delegateTarget);
+		return with(CheckedSupplier.of(() -> generator.generateToggleableDelegate(layer, delegateTarget, toggle, commonDelegateType, classLoader)));
 	}
 
 	@Override
@@ -114,7 +131,7 @@ public class GeneratedDecorator<I, T extends I> extends AbstractDecorator<I, T>
 
 		// TODO: create DelegateInstantiator interface
 		// that will encapsulate the creation of the decorator
-		DelegateInstantiationInfo delegateInstantiationInfo = CACHE.computeIfAbsent(type,
+		DelegateInstantiationInfo delegateInstantiationInfo = registry.getDelegateInstantiationInfo(type,
 				clazz -> findDelegateInstantiationInfo(clazz, commonDelegateType, constructorArgTypes));
 
 		Object[] args = ReflectionUtils.insert(constructorArgs, delegateInstantiationInfo.getParameterToInsertIndex(), delegateTarget);
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Switch turning a layer added with {@link Decorator#with(io.github.pellse.decorator.aop.DelegateInvocationHandler, LayerToggle)}
+ * or {@link Decorator#with(java.util.function.Function, LayerToggle)} on and off at runtime,
+ * calls go straight to the next layer while the toggle is disabled.
+ * <p>
+ * The state is held in a volatile field, a disabled layer therefore costs a volatile read and one extra call
+ * in front of the next layer.
+ * A toggle can be shared by several layers, {@link #named(String)} and {@link #named(String, Class)}
+ * return process wide toggles to switch a kind of layer globally or for a single decorated type.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public final class LayerToggle {
+
+	private static final Map<String, LayerToggle> NAMED_TOGGLES = new ConcurrentHashMap<>();
+
+	private volatile boolean enabled;
+
+	public LayerToggle(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public static LayerToggle named(String name) {
+		return NAMED_TOGGLES.computeIfAbsent(name, key -> new LayerToggle(false));
+	}
+
+	public static LayerToggle named(String name, Class<?> decoratedType) {
+		return named(name + '@' + decoratedType.getName());
+	}
+
+	/**
+	 * Switches the toggle with the given name and the toggles with that name specific to a decorated type
+	 */
+	public static void setEnabled(String name, boolean enabled) {
+		NAMED_TOGGLES.forEach((key, toggle) -> {
+			if (key.equals(name) || key.startsWith(name + '@'))
+				toggle.setEnabled(enabled);
+		});
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void enable() {
+		setEnabled(true);
+	}
+
+	public void disable() {
+		setEnabled(false);
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.agent;
+
+import java.lang.instrument.Instrumentation;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.utility.JavaModule;
+
+/**
+ * Java agent weaving the default methods of a partial interface (e.g. {@code SafeList}) directly into a root class,
+ * instances of the woven class behave like the root object decorated with the partial interface
+ * without any wrapper object:
+ *
+ * <pre>
+ * DecoratorAgent.weave("com.acme.EntityList", SafeList.class);
+ * SafeList&lt;Entity&gt; entities = (SafeList&lt;Entity&gt;) new EntityList();
+ * </pre>
+ *
+ * The agent is installed with {@code -javaagent} or attached at runtime through {@link #install(Instrumentation)},
+ * classes are woven when they are loaded so {@link #weave(String, Class)} must be called before the root class is loaded.
+ * Already loaded classes cannot be retransformed since weaving adds an interface and methods to the root class,
+ * which the JVM only allows when a class is first defined.
+ * The bytecode of the default methods is copied into the root class, within a woven method calls made on the object itself,
+ * e.g. through the delegate returned by the partial interface, reach the original implementation of the root class.
+ * Woven default methods cannot call super or private methods of the partial interface nor contain lambda expressions,
+ * method references to accessible methods are supported.
+ * Only partial interfaces are supported, abstract partial classes still need a wrapper generated by {@link io.github.pellse.decorator.Decorator}.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public final class DecoratorAgent {
+
+	private static final Map<String, Class<?>> WOVEN_CLASSES = new ConcurrentHashMap<>();
+
+	private static final Map<String, LayerWeaver> LAYER_WEAVERS = new ConcurrentHashMap<>();
+
+	private static final Map<String, Throwable> WEAVING_ERRORS = new ConcurrentHashMap<>();
+
+	private static volatile Instrumentation instrumentation;
+
+	private DecoratorAgent() {
+	}
+
+	public static void premain(String agentArgs, Instrumentation inst) {
+		install(inst);
+	}
+
+	public static void agentmain(String agentArgs, Instrumentation inst) {
+		install(inst);
+	}
+
+	public static synchronized void install(Instrumentation inst) {
+		if (instrumentation != null)
+			return;
+
+		new AgentBuilder.Default()
+			.with(AgentBuilder.TypeStrategy.Default.REBASE)
+			.with(AgentBuilder.InitializationStrategy.NoOp.INSTANCE)
+			.with(new AgentBuilder.Listener.Compound(AgentBuilder.Listener.StreamWriting.toSystemError().withErrorsOnly(), new ErrorRecorder()))
+			.type(typeDescription -> LAYER_WEAVERS.containsKey(typeDescription.getName()))
+			.transform((builder, typeDescription, classLoader, module) -> LAYER_WEAVERS.get(typeDescription.getName()).weave(builder, typeDescription))
+			.installOn(inst);
+
+		instrumentation = inst;
+	}
+
+	public static boolean isInstalled() {
+		return instrumentation != null;
+	}
+
+	/**
+	 * Weaves the default methods of {@code partialType} that override methods of the class named {@code rootClassName}
+	 * into that class, which also implements {@code partialType} once woven.
+	 * Abstract methods of the partial interface taking no argument and returning a supertype of the root class return the root object itself.
+	 * Errors raised while the root class is transformed are written to {@link System#err} and reported by {@link #getWeavingErrors()}.
+	 *
+	 * @throws IllegalArgumentException if {@code partialType} is not an interface or one of its default methods cannot be woven
+	 * @throws IllegalStateException if the agent is not installed, the root class is already woven or already loaded
+	 */
+	public static void weave(String rootClassName, Class<?> partialType) {
+		if (!partialType.isInterface())
+			throw new IllegalArgumentException("Only partial interfaces can be woven, " + partialType.getName() + " is a class");
+
+		Instrumentation inst = instrumentation;
+		if (inst == null)
+			throw new IllegalStateException("DecoratorAgent is not installed");
+
+		LayerWeaver layerWeaver = LayerWeaver.of(partialType);
+
+		if (Arrays.stream(inst.getAllLoadedClasses()).anyMatch(loadedClass -> loadedClass.getName().equals(rootClassName)))
+			throw new IllegalStateException(rootClassName + " is already loaded, it must be woven before it is loaded");
+
+		if (WOVEN_CLASSES.putIfAbsent(rootClassName, partialType) != null)
+			throw new IllegalStateException(rootClassName + " is already woven with " + WOVEN_CLASSES.get(rootClassName).getName());
+
+		LAYER_WEAVERS.put(rootClassName, layerWeaver);
+	}
+
+	public static Map<String, Class<?>> getWovenClasses() {
+		return WOVEN_CLASSES;
+	}
+
+	public static Map<String, Throwable> getWeavingErrors() {
+		return WEAVING_ERRORS;
+	}
+
+	private static class ErrorRecorder extends AgentBuilder.Listener.Adapter {
+
+		@Override
+		public void onError(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded, Throwable throwable) {
+			WEAVING_ERRORS.put(typeName, throwable);
+		}
+	}
+}
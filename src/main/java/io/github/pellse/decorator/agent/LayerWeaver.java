@@ -0,0 +1,390 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.agent;
+
+import static net.bytebuddy.jar.asm.Opcodes.ALOAD;
+import static net.bytebuddy.jar.asm.Opcodes.F_SAME;
+import static net.bytebuddy.jar.asm.Opcodes.IF_ACMPNE;
+import static net.bytebuddy.jar.asm.Opcodes.INVOKEINTERFACE;
+import static net.bytebuddy.jar.asm.Opcodes.INVOKESPECIAL;
+import static net.bytebuddy.jar.asm.Opcodes.INVOKESTATIC;
+import static net.bytebuddy.jar.asm.Opcodes.INVOKEVIRTUAL;
+import static net.bytebuddy.matcher.ElementMatchers.hasDescriptor;
+import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
+import static net.bytebuddy.matcher.ElementMatchers.isDeclaredBy;
+import static net.bytebuddy.matcher.ElementMatchers.isSuperTypeOf;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import static net.bytebuddy.matcher.ElementMatchers.not;
+import static net.bytebuddy.matcher.ElementMatchers.returns;
+import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
+import static net.bytebuddy.utility.OpenedClassReader.ASM_API;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.pellse.decorator.util.function.CheckedSupplier;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.method.MethodDescription.SignatureToken;
+import net.bytebuddy.description.method.ParameterDescription;
+import net.bytebuddy.description.method.ParameterList;
+import net.bytebuddy.description.modifier.Ownership;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.description.type.TypeDefinition;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.ClassFileLocator;
+import net.bytebuddy.dynamic.DynamicType.Builder;
+import net.bytebuddy.dynamic.scaffold.InstrumentedType;
+import net.bytebuddy.dynamic.scaffold.MethodGraph;
+import net.bytebuddy.implementation.FixedValue;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
+import net.bytebuddy.implementation.bytecode.StackManipulation;
+import net.bytebuddy.implementation.bytecode.member.MethodReturn;
+import net.bytebuddy.implementation.bytecode.member.MethodVariableAccess;
+import net.bytebuddy.jar.asm.AnnotationVisitor;
+import net.bytebuddy.jar.asm.Attribute;
+import net.bytebuddy.jar.asm.ClassReader;
+import net.bytebuddy.jar.asm.ClassVisitor;
+import net.bytebuddy.jar.asm.Handle;
+import net.bytebuddy.jar.asm.Label;
+import net.bytebuddy.jar.asm.MethodVisitor;
+import net.bytebuddy.jar.asm.Type;
+import net.bytebuddy.jar.asm.TypePath;
+import net.bytebuddy.utility.OpenedClassReader;
+
+/**
+ * Weaves the default methods of a partial interface into a root class without any per call indirection:
+ * the bytecode of each default method is copied into the root class and the calls it makes to woven methods
+ * go through a static bridge, which invokes the rebased original implementation when the receiver is the object itself.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+final class LayerWeaver {
+
+	private static final String BRIDGE_METHOD_PREFIX = "decorator$delegate$";
+
+	private final Class<?> partialType;
+	private final byte[] classFile;
+	private final Map<String, Method> defaultMethods;
+	private final Map<String, DelegateCall> delegateCalls;
+
+	private LayerWeaver(Class<?> partialType, byte[] classFile, Map<String, Method> defaultMethods, Map<String, DelegateCall> delegateCalls) {
+		this.partialType = partialType;
+		this.classFile = classFile;
+		this.defaultMethods = defaultMethods;
+		this.delegateCalls = delegateCalls;
+	}
+
+	static LayerWeaver of(Class<?> partialType) {
+		Map<String, Method> defaultMethods = new LinkedHashMap<>();
+		Set<String> privateMethods = new HashSet<>();
+		for (Method method : partialType.getDeclaredMethods()) {
+			if (method.isDefault())
+				defaultMethods.put(method.getName() + Type.getMethodDescriptor(method), method);
+			else if (Modifier.isPrivate(method.getModifiers()))
+				privateMethods.add(method.getName() + Type.getMethodDescriptor(method));
+		}
+
+		String partialName = Type.getInternalName(partialType);
+		byte[] classFile = ClassFileLocator.ForClassLoader.read(partialType);
+		Map<String, DelegateCall> delegateCalls = new LinkedHashMap<>();
+
+		OpenedClassReader.of(classFile).accept(new ClassVisitor(ASM_API) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				if (!defaultMethods.containsKey(name + descriptor))
+					return null;
+
+				return new MethodVisitor(ASM_API) {
+					@Override
+					public void visitMethodInsn(int opcode, String owner, String methodName, String methodDescriptor, boolean isInterface) {
+						if (opcode == INVOKESPECIAL && !methodName.equals("<init>"))
+							throw unsupported(partialType, name, "super method calls");
+						if (owner.equals(partialName) && privateMethods.contains(methodName + methodDescriptor))
+							throw unsupported(partialType, name, "calls to private methods");
+
+						Method delegateMethod = defaultMethods.get(methodName + methodDescriptor);
+						if (delegateMethod != null && opcode != INVOKESTATIC && !delegateCalls.containsKey(owner + '.' + methodName + methodDescriptor))
+							delegateCalls.put(owner + '.' + methodName + methodDescriptor,
+									new DelegateCall(BRIDGE_METHOD_PREFIX + delegateCalls.size(), loadClass(owner, partialType), delegateMethod, opcode == INVOKEINTERFACE));
+					}
+
+					@Override
+					public void visitInvokeDynamicInsn(String dynamicName, String dynamicDescriptor, Handle bootstrapMethod, Object... bootstrapArguments) {
+						for (Object argument : bootstrapArguments) {
+							if (argument instanceof Handle && ((Handle) argument).getOwner().equals(partialName)
+									&& privateMethods.contains(((Handle) argument).getName() + ((Handle) argument).getDesc()))
+								throw unsupported(partialType, name, "lambda expressions");
+						}
+					}
+				};
+			}
+		}, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+		return new LayerWeaver(partialType, classFile, defaultMethods, delegateCalls);
+	}
+
+	Builder<?> weave(Builder<?> builder, TypeDescription rootType) {
+		Map<String, SignatureToken> originalMethods = new HashMap<>();
+		for (MethodDescription method : MethodGraph.Compiler.DEFAULT.compile(rootType).listNodes().asMethodList().filter(not(isAbstract()))) {
+			String signature = method.getInternalName() + method.getDescriptor();
+			if (defaultMethods.containsKey(signature))
+				originalMethods.put(signature, method.asSignatureToken());
+		}
+
+		builder = builder.implement(partialType)
+			.method(isAbstract()
+					.and(isDeclaredBy(isSuperTypeOf(partialType)))
+					.and(takesArguments(0))
+					.and(returns(isSuperTypeOf(rootType))))
+				.intercept(FixedValue.self());
+
+		for (String signature : originalMethods.keySet()) {
+			Method method = defaultMethods.get(signature);
+			builder = builder.method(named(method.getName()).and(hasDescriptor(Type.getMethodDescriptor(method))))
+				.intercept(new LayerMethod(signature));
+		}
+
+		for (DelegateCall call : delegateCalls.values()) {
+			List<TypeDefinition> parameterTypes = new ArrayList<>();
+			parameterTypes.add(new TypeDescription.ForLoadedType(call.ownerType));
+			for (Class<?> parameterType : call.method.getParameterTypes())
+				parameterTypes.add(new TypeDescription.ForLoadedType(parameterType));
+			parameterTypes.add(rootType);
+
+			builder = builder.defineMethod(call.bridgeName, call.method.getReturnType(), Visibility.PRIVATE, Ownership.STATIC)
+				.withParameters(parameterTypes)
+				.intercept(new DelegateBridge(call, originalMethods.get(call.signature())));
+		}
+		return builder;
+	}
+
+	private ByteCodeAppender.Size copyDefaultMethod(String signature, MethodVisitor methodVisitor, String rootName) {
+		int[] maxs = new int[2];
+
+		OpenedClassReader.of(classFile).accept(new ClassVisitor(ASM_API) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String methodSignature, String[] exceptions) {
+				return signature.equals(name + descriptor) ? new DefaultMethodCopier(methodVisitor, rootName, maxs) : null;
+			}
+		}, 0);
+
+		return new ByteCodeAppender.Size(maxs[0], maxs[1]);
+	}
+
+	private static Class<?> loadClass(String internalName, Class<?> partialType) {
+		return CheckedSupplier.of(() -> Class.forName(Type.getObjectType(internalName).getClassName(), false, partialType.getClassLoader())).get();
+	}
+
+	private static IllegalArgumentException unsupported(Class<?> partialType, String methodName, String feature) {
+		return new IllegalArgumentException(partialType.getName() + "." + methodName + " cannot be woven, " + feature + " are not supported in woven default methods");
+	}
+
+	private static final class DelegateCall {
+
+		private final String bridgeName;
+		private final Class<?> ownerType;
+		private final Method method;
+		private final boolean isInterface;
+
+		private DelegateCall(String bridgeName, Class<?> ownerType, Method method, boolean isInterface) {
+			this.bridgeName = bridgeName;
+			this.ownerType = ownerType;
+			this.method = method;
+			this.isInterface = isInterface;
+		}
+
+		private String signature() {
+			return method.getName() + Type.getMethodDescriptor(method);
+		}
+
+		private String bridgeDescriptor(String rootName) {
+			StringBuilder descriptor = new StringBuilder("(").append(Type.getDescriptor(ownerType));
+			for (Class<?> parameterType : method.getParameterTypes())
+				descriptor.append(Type.getDescriptor(parameterType));
+			return descriptor.append('L').append(rootName).append(";)").append(Type.getDescriptor(method.getReturnType())).toString();
+		}
+	}
+
+	private final class DefaultMethodCopier extends MethodVisitor {
+
+		private final String rootName;
+		private final int[] maxs;
+
+		private DefaultMethodCopier(MethodVisitor methodVisitor, String rootName, int[] maxs) {
+			super(ASM_API, methodVisitor);
+			this.rootName = rootName;
+			this.maxs = maxs;
+		}
+
+		@Override
+		public void visitParameter(String name, int access) {
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotationDefault() {
+			return null;
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return null;
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return null;
+		}
+
+		@Override
+		public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+		}
+
+		@Override
+		public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+			return null;
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+		}
+
+		@Override
+		public void visitCode() {
+		}
+
+		@Override
+		public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return null;
+		}
+
+		@Override
+		public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return null;
+		}
+
+		@Override
+		public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index, String descriptor, boolean visible) {
+			return null;
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+			DelegateCall call = opcode != INVOKESTATIC ? delegateCalls.get(owner + '.' + name + descriptor) : null;
+			if (call == null) {
+				super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+				return;
+			}
+			super.visitVarInsn(ALOAD, 0);
+			super.visitMethodInsn(INVOKESTATIC, rootName, call.bridgeName, call.bridgeDescriptor(rootName), false);
+		}
+
+		@Override
+		public void visitMaxs(int maxStack, int maxLocals) {
+			maxs[0] = maxStack + 1;
+			maxs[1] = maxLocals;
+		}
+
+		@Override
+		public void visitEnd() {
+		}
+	}
+
+	private final class LayerMethod implements Implementation {
+
+		private final String signature;
+
+		private LayerMethod(String signature) {
+			this.signature = signature;
+		}
+
+		@Override
+		public InstrumentedType prepare(InstrumentedType instrumentedType) {
+			return instrumentedType;
+		}
+
+		@Override
+		public ByteCodeAppender appender(Target target) {
+			return (methodVisitor, context, instrumentedMethod) -> copyDefaultMethod(signature, methodVisitor, target.getInstrumentedType().getInternalName());
+		}
+	}
+
+	private static final class DelegateBridge implements Implementation {
+
+		private final DelegateCall call;
+		private final SignatureToken originalMethod;
+
+		private DelegateBridge(DelegateCall call, SignatureToken originalMethod) {
+			this.call = call;
+			this.originalMethod = originalMethod;
+		}
+
+		@Override
+		public InstrumentedType prepare(InstrumentedType instrumentedType) {
+			return instrumentedType;
+		}
+
+		@Override
+		public ByteCodeAppender appender(Target target) {
+			return (methodVisitor, context, bridgeMethod) -> {
+				ParameterList<?> parameters = bridgeMethod.getParameters();
+				ParameterDescription self = parameters.get(parameters.size() - 1);
+
+				if (originalMethod != null) {
+					Implementation.SpecialMethodInvocation originalCall = target.invokeSuper(originalMethod);
+					if (!originalCall.isValid())
+						throw new IllegalStateException("Cannot invoke original implementation of " + originalMethod);
+
+					Label virtualCall = new Label();
+					methodVisitor.visitVarInsn(ALOAD, 0);
+					methodVisitor.visitVarInsn(ALOAD, self.getOffset());
+					methodVisitor.visitJumpInsn(IF_ACMPNE, virtualCall);
+					new StackManipulation.Compound(
+							MethodVariableAccess.of(self.getType()).loadFrom(self.getOffset()),
+							loadArguments(parameters),
+							originalCall,
+							MethodReturn.of(bridgeMethod.getReturnType())).apply(methodVisitor, context);
+					methodVisitor.visitLabel(virtualCall);
+					methodVisitor.visitFrame(F_SAME, 0, null, 0, null);
+				}
+
+				new StackManipulation.Compound(
+						MethodVariableAccess.of(parameters.get(0).getType()).loadFrom(0),
+						loadArguments(parameters)).apply(methodVisitor, context);
+				methodVisitor.visitMethodInsn(call.isInterface ? INVOKEINTERFACE : INVOKEVIRTUAL,
+						Type.getInternalName(call.ownerType), call.method.getName(), Type.getMethodDescriptor(call.method), call.isInterface);
+				MethodReturn.of(bridgeMethod.getReturnType()).apply(methodVisitor, context);
+
+				return new ByteCodeAppender.Size(Math.max(2, bridgeMethod.getStackSize() - 1), bridgeMethod.getStackSize());
+			};
+		}
+
+		private static StackManipulation loadArguments(ParameterList<?> parameters) {
+			List<StackManipulation> loads = new ArrayList<>();
+			for (ParameterDescription parameter : parameters.subList(1, parameters.size() - 1))
+				loads.add(MethodVariableAccess.of(parameter.getType()).loadFrom(parameter.getOffset()));
+			return new StackManipulation.Compound(loads);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.aop;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Decorates the objects returned by selected methods of the delegate, e.g. the iterators returned by {@code iterator()},
+ * which would otherwise escape the decorator chain:
+ *
+ * <pre>
+ * List&lt;String&gt; list = Decorator.of(pagedList, List.class)
+ *	.with(ReturnValueInvocationHandler.&lt;List&gt;builder()
+ *		.decorate(Iterator.class, iterator -&gt; new PrefetchingIterator&lt;&gt;(iterator, 100))
+ *		.build())
+ *	.make();
+ * </pre>
+ *
+ * Rules registered for a method name take precedence over rules registered for a return type,
+ * rules registered for a return type only apply to methods declaring exactly that return type.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class ReturnValueInvocationHandler<T> implements DelegateInvocationHandler<T> {
+
+	private final Map<String, Function<Object, Object>> methodRules;
+	private final List<ReturnTypeRule> returnTypeRules;
+	private final Map<Method, Optional<Function<Object, Object>>> resolvedRules = new ConcurrentHashMap<>();
+
+	ReturnValueInvocationHandler(Map<String, Function<Object, Object>> methodRules, List<ReturnTypeRule> returnTypeRules) {
+		this.methodRules = methodRules;
+		this.returnTypeRules = returnTypeRules;
+	}
+
+	@Override
+	public Object invoke(T delegate, Method method, Object[] args) throws Throwable {
+		Object result = invokeAndUnwrap(delegate, method, args);
+		if (result == null)
+			return null;
+
+		Optional<Function<Object, Object>> rule = resolvedRules.get(method);
+		if (rule == null) {
+			rule = resolveRule(method);
+			resolvedRules.put(method, rule);
+		}
+		return rule.isPresent() ? rule.get().apply(result) : result;
+	}
+
+	private Optional<Function<Object, Object>> resolveRule(Method method) {
+		Function<Object, Object> methodRule = methodRules.get(method.getName());
+		if (methodRule != null)
+			return Optional.of(methodRule);
+
+		return returnTypeRules.stream()
+				.filter(rule -> rule.returnType == method.getReturnType())
+				.map(rule -> rule.decorator)
+				.findFirst();
+	}
+
+	public static <T> Builder<T> builder() {
+		return new Builder<>();
+	}
+
+	static final class ReturnTypeRule {
+
+		private final Class<?> returnType;
+		private final Function<Object, Object> decorator;
+
+		ReturnTypeRule(Class<?> returnType, Function<Object, Object> decorator) {
+			this.returnType = returnType;
+			this.decorator = decorator;
+		}
+	}
+
+	public static class Builder<T> {
+
+		private final Map<String, Function<Object, Object>> methodRules = new HashMap<>();
+		private final List<ReturnTypeRule> returnTypeRules = new ArrayList<>();
+
+		Builder() {
+		}
+
+		/**
+		 * Decorates the values returned by the methods with the given name
+		 */
+		@SuppressWarnings("unchecked")
+		public <R> Builder<T> decorate(String methodName, Function<? super R, ?> decorator) {
+			methodRules.put(methodName, (Function<Object, Object>) decorator);
+			return this;
+		}
+
+		/**
+		 * Decorates the values returned by the methods declaring {@code returnType} as their return type,
+		 * e.g. a rule for {@code Iterator} applies to {@code iterator()} but not to {@code listIterator()}.
+		 * The decorated value replaces the returned one for all callers, e.g. a {@code PrefetchingIterator}
+		 * throws {@code UnsupportedOperationException} on {@code remove()} since it reads ahead of the consumer.
+		 */
+		@SuppressWarnings("unchecked")
+		public <R> Builder<T> decorate(Class<R> returnType, Function<? super R, ? extends R> decorator) {
+			returnTypeRules.add(new ReturnTypeRule(returnType, (Function<Object, Object>) decorator));
+			return this;
+		}
+
+		public ReturnValueInvocationHandler<T> build() {
+			return new ReturnValueInvocationHandler<>(new HashMap<>(methodRules), new ArrayList<>(returnTypeRules));
+		}
+	}
+}
@@ -0,0 +1,343 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.audit;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Arrays.asList;
+import static java.util.Arrays.stream;
+import static java.util.Comparator.comparing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import io.github.pellse.decorator.aop.DelegateInvocationHandler;
+
+/**
+ * Audits the invocations going through this layer without formatting or writing anything on the calling thread:
+ * the caller only copies the method id and the selected argument values into a preallocated ring buffer slot,
+ * a background thread then encodes batches of slots as text lines and appends them to the log file.
+ * <p>
+ * Strings, primitive wrappers and enums are copied by reference, any other argument is formatted with {@code toString()}
+ * on the calling thread so that mutating it after the invocation does not change what gets audited.
+ * <p>
+ * When the ring buffer is full because the log file cannot keep up, audit records are dropped rather than
+ * slowing down the caller, see {@link #getDroppedCount()}.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class AuditInvocationHandler<T> implements DelegateInvocationHandler<T>, AutoCloseable {
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private static final Object FORMATTING_FAILED = new Object();
+
+	private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(asList(String.class, Boolean.class, Character.class,
+			Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class));
+
+	private final Map<Method, Integer> methodIds = new HashMap<>();
+	private final String[] methodNames;
+	private final int[][] selectedArguments;
+
+	private final Slot[] slots;
+	private final int mask;
+	private final AtomicLong claimedSequence = new AtomicLong();
+	private volatile long consumedSequence;
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+
+	private final FileChannel channel;
+	private final Durability durability;
+	private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+	private final StringBuilder line = new StringBuilder(256);
+
+	private final Thread writer;
+	private volatile boolean closed;
+	private volatile IOException writeFailure;
+
+	AuditInvocationHandler(Path logFile, Method[] methods, int[][] selectedArguments, int capacity, int maxArguments, Durability durability, String threadName) throws IOException {
+		if (Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("capacity must be a power of 2, was " + capacity);
+
+		for (int i = 0; i < methods.length; i++)
+			methodIds.put(methods[i], i);
+
+		this.methodNames = stream(methods).map(Method::getName).toArray(String[]::new);
+		this.selectedArguments = selectedArguments;
+
+		this.slots = IntStream.range(0, capacity).mapToObj(i -> new Slot(maxArguments)).toArray(Slot[]::new);
+		this.mask = capacity - 1;
+
+		this.channel = FileChannel.open(logFile, CREATE, WRITE, APPEND);
+		this.durability = durability;
+
+		this.writer = new Thread(this::writeLoop, threadName);
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	@Override
+	public Object invoke(T delegate, Method method, Object[] args) throws Throwable {
+		Integer methodId = methodIds.get(method);
+		if (methodId != null && !closed)
+			publish(methodId, args);
+
+		return invokeAndUnwrap(delegate, method, args);
+	}
+
+	private void publish(int methodId, Object[] args) {
+		long sequence;
+		do {
+			sequence = claimedSequence.get();
+			if (sequence - consumedSequence >= slots.length) {
+				droppedCount.incrementAndGet();
+				return;
+			}
+		} while (!claimedSequence.compareAndSet(sequence, sequence + 1));
+
+		Slot slot = slots[(int) sequence & mask];
+		slot.timestampMillis = System.currentTimeMillis();
+		slot.methodId = methodId;
+
+		int[] argumentIndexes = selectedArguments[methodId];
+		int argCount = 0;
+		for (int i = 0; i < argumentIndexes.length && argCount < slot.args.length; i++) {
+			if (args != null && argumentIndexes[i] < args.length)
+				slot.args[argCount++] = snapshot(args[argumentIndexes[i]]);
+		}
+		slot.argCount = argCount;
+		slot.publishedSequence = sequence;
+	}
+
+	private static Object snapshot(Object arg) {
+		if (arg == null || IMMUTABLE_TYPES.contains(arg.getClass()) || arg instanceof Enum)
+			return arg;
+
+		try {
+			return String.valueOf(arg);
+		} catch (Throwable e) {
+			return FORMATTING_FAILED;
+		}
+	}
+
+	private void writeLoop() {
+		long sequence = consumedSequence;
+		while (!closed || sequence < claimedSequence.get()) {
+			long batchStart = sequence;
+			try {
+				while (isPublished(sequence) && writeBuffer.remaining() > 4096)
+					encode(slots[(int) sequence++ & mask]);
+
+				if (sequence > batchStart) {
+					writeBatch();
+					consumedSequence = sequence;
+				} else if (!closed || sequence == claimedSequence.get()) {
+					LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				} else {
+					Thread.yield();
+				}
+			} catch (IOException e) {
+				writeFailure = e;
+				writeBuffer.clear();
+				consumedSequence = sequence;
+			}
+		}
+	}
+
+	private boolean isPublished(long sequence) {
+		return slots[(int) sequence & mask].publishedSequence == sequence;
+	}
+
+	private void encode(Slot slot) throws IOException {
+		byte[] bytes;
+		try {
+			bytes = format(slot);
+		} catch (Throwable e) {
+			failedCount.incrementAndGet();
+			return;
+		} finally {
+			Arrays.fill(slot.args, 0, slot.argCount, null);
+		}
+
+		if (bytes.length > writeBuffer.remaining())
+			writeBuffer();
+
+		if (bytes.length > writeBuffer.capacity())
+			write(ByteBuffer.wrap(bytes));
+		else
+			writeBuffer.put(bytes);
+	}
+
+	private byte[] format(Slot slot) {
+		line.setLength(0);
+		line.append(slot.timestampMillis).append(' ').append(methodNames[slot.methodId]).append('(');
+
+		for (int i = 0; i < slot.argCount; i++) {
+			if (slot.args[i] == FORMATTING_FAILED)
+				throw new IllegalStateException("Argument " + i + " could not be formatted");
+
+			if (i > 0)
+				line.append(", ");
+
+			line.append(slot.args[i]);
+		}
+		line.append(")\n");
+
+		return line.toString().getBytes(UTF_8);
+	}
+
+	private void writeBatch() throws IOException {
+		writeBuffer();
+		if (durability == Durability.BATCH)
+			channel.force(false);
+	}
+
+	private void writeBuffer() throws IOException {
+		writeBuffer.flip();
+		write(writeBuffer);
+		writeBuffer.clear();
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Waits until every audit record published so far has been written to the log file
+	 */
+	public void flush() {
+		long sequence = claimedSequence.get();
+		while (consumedSequence < sequence && writer.isAlive())
+			LockSupport.parkNanos(IDLE_PARK_NANOS);
+
+		IOException failure = writeFailure;
+		if (failure != null)
+			throw new UncheckedIOException(failure);
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Number of audit records that could not be formatted, e.g. because the {@code toString()} of an argument failed
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+
+		closed = true;
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.force(false);
+		channel.close();
+	}
+
+	public static <T> Builder<T> builder(Path logFile, Class<T> auditedType) {
+		return new Builder<>(logFile, auditedType);
+	}
+
+	private static final class Slot {
+
+		private volatile long publishedSequence = -1;
+		private long timestampMillis;
+		private int methodId;
+		private int argCount;
+		private final Object[] args;
+
+		Slot(int maxArguments) {
+			this.args = new Object[maxArguments];
+		}
+	}
+
+	public static class Builder<T> {
+
+		private final Path logFile;
+		private final Class<T> auditedType;
+
+		private int capacity = 8192;
+		private int maxArguments = 4;
+		private Durability durability = Durability.NONE;
+
+		private final Map<String, int[]> methodArguments = new HashMap<>();
+
+		Builder(Path logFile, Class<T> auditedType) {
+			this.logFile = logFile;
+			this.auditedType = auditedType;
+		}
+
+		public Builder<T> capacity(int capacity) {
+			this.capacity = capacity;
+			return this;
+		}
+
+		public Builder<T> maxArguments(int maxArguments) {
+			this.maxArguments = maxArguments;
+			return this;
+		}
+
+		public Builder<T> durability(Durability durability) {
+			this.durability = durability;
+			return this;
+		}
+
+		/**
+		 * Restricts the arguments audited for a method, by default the first {@code maxArguments} arguments are audited
+		 */
+		public Builder<T> arguments(String methodName, int... argumentIndexes) {
+			methodArguments.put(methodName, argumentIndexes);
+			return this;
+		}
+
+		public AuditInvocationHandler<T> build() throws IOException {
+			Method[] methods = stream(auditedType.getMethods())
+					.sorted(comparing(Method::toGenericString))
+					.toArray(Method[]::new);
+
+			int[][] selectedArguments = stream(methods)
+					.map(method -> methodArguments.getOrDefault(method.getName(), IntStream.range(0, Math.min(method.getParameterCount(), maxArguments)).toArray()))
+					.toArray(int[][]::new);
+
+			return new AuditInvocationHandler<>(logFile, methods, selectedArguments, capacity, maxArguments, durability, "audit-" + auditedType.getSimpleName());
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.audit;
+
+/**
+ * @author Sebastien Pelletier
+ *
+ */
+public enum Durability {
+	/**
+	 * Audit records are handed to the operating system, which decides when to write them to disk
+	 */
+	NONE,
+	/**
+	 * The log file is forced to disk after each batch of audit records
+	 */
+	BATCH
+}
@@ -22,6 +22,7 @@ import java.util.function.Function;
 import org.apache.commons.lang3.ArrayUtils;
 
 import io.github.pellse.decorator.Decorator;
+import io.github.pellse.decorator.DecoratorRegistry;
 import io.github.pellse.decorator.aop.DelegateInvocationFilter;
 import io.github.pellse.decorator.aop.DelegateInvocationHandler;
 
@@ -32,6 +33,11 @@ public interface DecoratorBuilder {
 		return new RootDelegateBuilder<>(Decorator.of(rootObject, delegateInterface), (Class<T>) rootObject.getClass(), delegateInterface);
 	}
 
+	@SuppressWarnings("unchecked")
+	public static <I, T extends I> RootDelegateBuilder<I, T> of(T rootObject, Class<I> delegateInterface, DecoratorRegistry registry) {
+		return new RootDelegateBuilder<>(Decorator.of(rootObject, delegateInterface, registry), (Class<T>) rootObject.getClass(), delegateInterface);
+	}
+
 	public static abstract class DelegateBuilder<I, D extends I, T extends I> {
 
 		private final Decorator<I, T> decorator;
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.collection;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only journal of the mutations applied to a list, each change is encoded as an operation id, an index
+ * and an optional element in parallel primitive and reference arrays so recording a change allocates nothing
+ * once the arrays are sized. Consumers read the changes since their last read through a {@link Cursor}
+ * and apply them to a replica instead of copying or diffing the whole list.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class ChangeJournal<E> {
+
+	public enum Operation {
+		ADD, SET, REMOVE, CLEAR;
+
+		private static final Operation[] VALUES = values();
+
+		byte id() {
+			return (byte) ordinal();
+		}
+
+		static Operation valueOf(byte id) {
+			return VALUES[id];
+		}
+	}
+
+	private static final int DEFAULT_INITIAL_CAPACITY = 64;
+
+	private byte[] operations;
+	private int[] indices;
+	private Object[] elements;
+
+	private long startPosition;
+	private int size;
+
+	public ChangeJournal() {
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+
+	public ChangeJournal(int initialCapacity) {
+		if (initialCapacity < 1)
+			throw new IllegalArgumentException("initialCapacity must be greater than 0, was " + initialCapacity);
+
+		this.operations = new byte[initialCapacity];
+		this.indices = new int[initialCapacity];
+		this.elements = new Object[initialCapacity];
+	}
+
+	public synchronized void recordAdd(int index, E element) {
+		append(Operation.ADD, index, element);
+	}
+
+	public synchronized void recordSet(int index, E element) {
+		append(Operation.SET, index, element);
+	}
+
+	public synchronized void recordRemove(int index) {
+		append(Operation.REMOVE, index, null);
+	}
+
+	public synchronized void recordClear() {
+		append(Operation.CLEAR, -1, null);
+	}
+
+	/**
+	 * Position right after the last recorded change
+	 */
+	public synchronized long getEndPosition() {
+		return startPosition + size;
+	}
+
+	/**
+	 * Position of the oldest change still retained
+	 */
+	public synchronized long getStartPosition() {
+		return startPosition;
+	}
+
+	/**
+	 * Cursor reading the changes recorded from now on
+	 */
+	public Cursor<E> cursor() {
+		return cursor(getEndPosition());
+	}
+
+	/**
+	 * Cursor reading the changes recorded from {@code position}, typically the position of a previous cursor
+	 */
+	public Cursor<E> cursor(long position) {
+		return new Cursor<>(this, position);
+	}
+
+	/**
+	 * Discards the changes recorded before {@code position} once every consumer has read them,
+	 * cursors positioned before the new start position can no longer be advanced
+	 */
+	public synchronized void discardBefore(long position) {
+		int discarded = (int) (Math.min(position, getEndPosition()) - startPosition);
+		if (discarded <= 0)
+			return;
+
+		int remaining = size - discarded;
+		System.arraycopy(operations, discarded, operations, 0, remaining);
+		System.arraycopy(indices, discarded, indices, 0, remaining);
+		System.arraycopy(elements, discarded, elements, 0, remaining);
+		Arrays.fill(elements, remaining, size, null);
+
+		startPosition += discarded;
+		size = remaining;
+	}
+
+	private void append(Operation operation, int index, E element) {
+		if (size == operations.length) {
+			int capacity = size << 1;
+			operations = Arrays.copyOf(operations, capacity);
+			indices = Arrays.copyOf(indices, capacity);
+			elements = Arrays.copyOf(elements, capacity);
+		}
+
+		operations[size] = operation.id();
+		indices[size] = index;
+		elements[size] = element;
+		size++;
+	}
+
+	private int offsetOf(long position) {
+		if (position < startPosition)
+			throw new IllegalStateException("Changes before position " + startPosition + " were discarded, cannot read from position " + position);
+
+		return (int) (position - startPosition);
+	}
+
+	/**
+	 * Single consumer view over the journal, {@link #next()} moves to the next change which is then
+	 * available through {@link #getOperation()}, {@link #getIndex()} and {@link #getElement()}
+	 */
+	public static class Cursor<E> {
+
+		private final ChangeJournal<E> journal;
+
+		private long position;
+
+		private Operation operation;
+		private int index;
+		private E element;
+
+		Cursor(ChangeJournal<E> journal, long position) {
+			this.journal = journal;
+			this.position = position;
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean next() {
+			synchronized (journal) {
+				int offset = journal.offsetOf(position);
+				if (offset >= journal.size)
+					return false;
+
+				operation = Operation.valueOf(journal.operations[offset]);
+				index = journal.indices[offset];
+				element = (E) journal.elements[offset];
+			}
+
+			position++;
+			return true;
+		}
+
+		/**
+		 * Applies all the changes not read yet to {@code replica}
+		 *
+		 * @return the number of changes applied
+		 */
+		public int applyTo(List<? super E> replica) {
+			int count = 0;
+			while (next()) {
+				switch (operation) {
+				case ADD:
+					replica.add(index, element);
+					break;
+				case SET:
+					replica.set(index, element);
+					break;
+				case REMOVE:
+					replica.remove(index);
+					break;
+				case CLEAR:
+					replica.clear();
+					break;
+				}
+				count++;
+			}
+			return count;
+		}
+
+		/**
+		 * Position of the next change to read, can be used to create a new cursor later on
+		 */
+		public long getPosition() {
+			return position;
+		}
+
+		public Operation getOperation() {
+			return operation;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public E getElement() {
+			return element;
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.collection;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * List layer recording every mutation into a {@link ChangeJournal} so replicas can be kept in sync
+ * from the deltas only, e.g.:
+ *
+ * <pre>
+ * JournalingList&lt;String&gt; list = Decorator.of(new ArrayList&lt;&gt;(), List.class)
+ *	.with(JournalingList.class)
+ *	.make();
+ *
+ * Cursor&lt;String&gt; cursor = list.getJournal().cursor();
+ * ...
+ * cursor.applyTo(replica);
+ * </pre>
+ *
+ * Bulk operations are recorded as individual changes, iterators and sub lists are views over this list
+ * so mutations made through them are recorded as well and they fail fast on concurrent structural modifications.
+ * Each mutation holds the journal monitor while the delegate is changed and the change is recorded,
+ * so concurrent writers are journaled in the order their mutations were applied.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public abstract class JournalingList<E> implements List<E> {
+
+	private final List<E> delegate;
+	private final ChangeJournal<E> journal;
+
+	private final JournalingView journalingView = new JournalingView();
+
+	public JournalingList(List<E> delegate) {
+		this(delegate, new ChangeJournal<>());
+	}
+
+	public JournalingList(List<E> delegate, ChangeJournal<E> journal) {
+		this.delegate = delegate;
+		this.journal = journal;
+	}
+
+	public ChangeJournal<E> getJournal() {
+		return journal;
+	}
+
+	@Override
+	public boolean add(E e) {
+		synchronized (journal) {
+			add(delegate.size(), e);
+			return true;
+		}
+	}
+
+	@Override
+	public void add(int index, E element) {
+		synchronized (journal) {
+			delegate.add(index, element);
+			journalingView.structurallyModified();
+			journal.recordAdd(index, element);
+		}
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		synchronized (journal) {
+			return addAll(delegate.size(), c);
+		}
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends E> c) {
+		synchronized (journal) {
+			if (!delegate.addAll(index, c))
+				return false;
+
+			journalingView.structurallyModified();
+			for (int i = index, end = index + c.size(); i < end; i++)
+				journal.recordAdd(i, delegate.get(i));
+
+			return true;
+		}
+	}
+
+	@Override
+	public E set(int index, E element) {
+		synchronized (journal) {
+			E previous = delegate.set(index, element);
+			journal.recordSet(index, element);
+			return previous;
+		}
+	}
+
+	@Override
+	public E remove(int index) {
+		synchronized (journal) {
+			E removed = delegate.remove(index);
+			journalingView.structurallyModified();
+			journal.recordRemove(index);
+			return removed;
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		synchronized (journal) {
+			int index = delegate.indexOf(o);
+			if (index < 0)
+				return false;
+
+			remove(index);
+			return true;
+		}
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		Objects.requireNonNull(c);
+		return removeIf(c::contains);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		Objects.requireNonNull(c);
+		return removeIf(e -> !c.contains(e));
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super E> filter) {
+		Objects.requireNonNull(filter);
+
+		synchronized (journal) {
+			boolean removed = false;
+			for (int i = delegate.size() - 1; i >= 0; i--) {
+				if (filter.test(delegate.get(i))) {
+					remove(i);
+					removed = true;
+				}
+			}
+			return removed;
+		}
+	}
+
+	@Override
+	public void replaceAll(UnaryOperator<E> operator) {
+		Objects.requireNonNull(operator);
+
+		synchronized (journal) {
+			for (int i = 0, size = delegate.size(); i < size; i++)
+				set(i, operator.apply(delegate.get(i)));
+
+			journalingView.structurallyModified();
+		}
+	}
+
+	@Override
+	public void sort(Comparator<? super E> c) {
+		synchronized (journal) {
+			delegate.sort(c);
+			journalingView.structurallyModified();
+
+			for (int i = 0, size = delegate.size(); i < size; i++)
+				journal.recordSet(i, delegate.get(i));
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (journal) {
+			delegate.clear();
+			journalingView.structurallyModified();
+			journal.recordClear();
+		}
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return journalingView.iterator();
+	}
+
+	@Override
+	public ListIterator<E> listIterator() {
+		return journalingView.listIterator();
+	}
+
+	@Override
+	public ListIterator<E> listIterator(int index) {
+		return journalingView.listIterator(index);
+	}
+
+	@Override
+	public List<E> subList(int fromIndex, int toIndex) {
+		return journalingView.subList(fromIndex, toIndex);
+	}
+
+	/**
+	 * Routes the mutations of iterators and sub lists back to this list, {@code modCount} is bumped
+	 * by every structural mutation of this list so they keep the fail fast behaviour of {@link AbstractList}
+	 */
+	private class JournalingView extends AbstractList<E> {
+
+		void structurallyModified() {
+			modCount++;
+		}
+
+		@Override
+		public E get(int index) {
+			return delegate.get(index);
+		}
+
+		@Override
+		public int size() {
+			return delegate.size();
+		}
+
+		@Override
+		public E set(int index, E element) {
+			return JournalingList.this.set(index, element);
+		}
+
+		@Override
+		public void add(int index, E element) {
+			JournalingList.this.add(index, element);
+		}
+
+		@Override
+		public E remove(int index) {
+			return JournalingList.this.remove(index);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.collection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import io.github.pellse.decorator.util.concurrent.BackgroundExecutors;
+
+/**
+ * Iterator reading its source in batches, the next batch is pulled from the source on a background thread
+ * while the current one is consumed so consumers of paged sources don't stall on every page boundary.
+ * The source iterator is only accessed by one thread at a time,
+ * {@link #remove()} is not supported since the source is read ahead of the consumer.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class PrefetchingIterator<E> implements Iterator<E> {
+
+	private final Iterator<? extends E> source;
+	private final int batchSize;
+	private final Executor executor;
+
+	private List<E> currentBatch = Collections.emptyList();
+	private int position;
+	private CompletableFuture<List<E>> nextBatch;
+
+	public PrefetchingIterator(Iterator<? extends E> source, int batchSize) {
+		this(source, batchSize, BackgroundExecutors.defaultExecutor());
+	}
+
+	public PrefetchingIterator(Iterator<? extends E> source, int batchSize, Executor executor) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batchSize must be greater than 0, was " + batchSize);
+
+		this.source = Objects.requireNonNull(source);
+		this.batchSize = batchSize;
+		this.executor = Objects.requireNonNull(executor);
+		this.nextBatch = prefetch();
+	}
+
+	public static <E> Stream<E> prefetch(Stream<E> stream, int batchSize) {
+		Iterator<E> iterator = new PrefetchingIterator<>(stream.iterator(), batchSize);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), stream.isParallel())
+				.onClose(stream::close);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (position < currentBatch.size())
+			return true;
+
+		if (nextBatch == null)
+			return false;
+
+		currentBatch = await(nextBatch);
+		position = 0;
+		nextBatch = currentBatch.size() < batchSize ? null : prefetch();
+
+		return !currentBatch.isEmpty();
+	}
+
+	@Override
+	public E next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		return currentBatch.get(position++);
+	}
+
+	private CompletableFuture<List<E>> prefetch() {
+		return CompletableFuture.supplyAsync(() -> {
+			List<E> batch = new ArrayList<>(batchSize);
+			while (batch.size() < batchSize && source.hasNext())
+				batch.add(source.next());
+
+			return batch;
+		}, executor);
+	}
+
+	private static <E> List<E> await(CompletableFuture<List<E>> batch) {
+		try {
+			return batch.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			throw e;
+		}
+	}
+}
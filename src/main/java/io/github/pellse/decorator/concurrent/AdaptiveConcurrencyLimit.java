@@ -0,0 +1,116 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Additive increase / multiplicative decrease limit on the number of in-flight calls:
+ * the limit grows by one when a call completes under the latency threshold while the
+ * limit is being used, and shrinks by the backoff ratio when it completes above it.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class AdaptiveConcurrencyLimit {
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyThresholdNanos;
+	private final double backoffRatio;
+
+	private final AtomicInteger limit;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger waiters = new AtomicInteger();
+
+	private final Object monitor = new Object();
+
+	public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long latencyThresholdNanos, double backoffRatio) {
+		if (minLimit < 1 || minLimit > maxLimit)
+			throw new IllegalArgumentException("Invalid limit range [" + minLimit + ", " + maxLimit + "]");
+		if (backoffRatio <= 0 || backoffRatio >= 1)
+			throw new IllegalArgumentException("backoffRatio must be between 0 and 1 exclusively, was " + backoffRatio);
+
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyThresholdNanos = latencyThresholdNanos;
+		this.backoffRatio = backoffRatio;
+		this.limit = new AtomicInteger(min(max(initialLimit, minLimit), maxLimit));
+	}
+
+	public boolean tryAcquire() {
+		int current;
+		do {
+			current = inFlight.get();
+			if (current >= limit.get())
+				return false;
+		} while (!inFlight.compareAndSet(current, current + 1));
+
+		return true;
+	}
+
+	public boolean tryAcquire(long maxWaitNanos) throws InterruptedException {
+		if (tryAcquire())
+			return true;
+
+		if (maxWaitNanos <= 0)
+			return false;
+
+		long deadline = System.nanoTime() + maxWaitNanos;
+		synchronized (monitor) {
+			waiters.incrementAndGet();
+			try {
+				while (!tryAcquire()) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0)
+						return false;
+
+					TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+				}
+				return true;
+			} finally {
+				waiters.decrementAndGet();
+			}
+		}
+	}
+
+	public void release(long latencyNanos) {
+		int previousInFlight = inFlight.getAndDecrement();
+
+		if (latencyNanos > latencyThresholdNanos)
+			limit.updateAndGet(current -> max(minLimit, (int) (current * backoffRatio)));
+		else if (previousInFlight * 2 >= limit.get())
+			limit.updateAndGet(current -> min(maxLimit, current + 1));
+
+		if (waiters.get() > 0) {
+			synchronized (monitor) {
+				monitor.notifyAll();
+			}
+		}
+	}
+
+	public int getLimit() {
+		return limit.get();
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+}
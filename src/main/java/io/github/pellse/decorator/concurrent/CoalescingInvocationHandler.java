@@ -0,0 +1,186 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+import static java.util.Arrays.asList;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import io.github.pellse.decorator.aop.DelegateInvocationHandler;
+
+/**
+ * Lets concurrent invocations of an idempotent method with equal arguments share a single execution:
+ * the first invocation is forwarded to the delegate while the invocations arriving before it completes
+ * wait for and receive its result or exception. Methods returning a {@link CompletableFuture} share
+ * the future returned by the first invocation until it completes.
+ * <p>
+ * Methods are coalesced when annotated with {@link Idempotent} or when their name is given at construction.
+ * In-flight calls are looked up with a reusable per thread key so joining a call allocates nothing,
+ * a re-entrant invocation made by the thread executing the same call is forwarded directly instead of waiting for itself.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class CoalescingInvocationHandler<T> implements DelegateInvocationHandler<T> {
+
+	private final Map<CallKey, InFlightCall> inFlightCalls = new ConcurrentHashMap<>();
+	private final Map<Method, Boolean> coalescedMethods = new ConcurrentHashMap<>();
+	private final Set<String> methodNames;
+
+	private final ThreadLocal<CallKey> lookupKey = ThreadLocal.withInitial(CallKey::new);
+
+	public CoalescingInvocationHandler(String... methodNames) {
+		this.methodNames = Collections.unmodifiableSet(new HashSet<>(asList(methodNames)));
+	}
+
+	@Override
+	public Object invoke(T delegate, Method method, Object[] args) throws Throwable {
+		if (!isCoalesced(method))
+			return invokeAndUnwrap(delegate, method, args);
+
+		InFlightCall inFlightCall = lookup(method, args);
+		if (inFlightCall == null)
+			inFlightCall = inFlightCalls.computeIfAbsent(new CallKey(method, args), InFlightCall::new);
+
+		boolean async = CompletableFuture.class.isAssignableFrom(method.getReturnType());
+
+		if (inFlightCall.owner != Thread.currentThread())
+			return async ? inFlightCall.thenApply(Function.identity()) : await(inFlightCall);
+
+		if (inFlightCall.started)
+			return async ? inFlightCall.thenApply(Function.identity()) : invokeAndUnwrap(delegate, method, args);
+
+		inFlightCall.started = true;
+
+		if (async)
+			return invokeAsync(inFlightCall, delegate, method, args);
+
+		try {
+			Object result = invokeAndUnwrap(delegate, method, args);
+			inFlightCall.complete(result);
+			return result;
+		} catch (Throwable e) {
+			inFlightCall.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlightCalls.remove(inFlightCall.callKey, inFlightCall);
+		}
+	}
+
+	private InFlightCall lookup(Method method, Object[] args) {
+		CallKey callKey = lookupKey.get().set(method, args);
+		try {
+			return inFlightCalls.get(callKey);
+		} finally {
+			callKey.set(null, null);
+		}
+	}
+
+	private Object invokeAsync(InFlightCall inFlightCall, T delegate, Method method, Object[] args) throws Throwable {
+		inFlightCall.whenComplete((result, e) -> inFlightCalls.remove(inFlightCall.callKey, inFlightCall));
+		try {
+			CompletableFuture<?> delegateFuture = (CompletableFuture<?>) invokeAndUnwrap(delegate, method, args);
+			delegateFuture.whenComplete((result, e) -> {
+				if (e != null)
+					inFlightCall.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+				else
+					inFlightCall.complete(result);
+			});
+			return delegateFuture;
+		} catch (Throwable e) {
+			inFlightCall.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private static Object await(CompletableFuture<Object> inFlightCall) throws Throwable {
+		try {
+			return inFlightCall.join();
+		} catch (CompletionException e) {
+			throw e.getCause();
+		}
+	}
+
+	private boolean isCoalesced(Method method) {
+		Boolean coalesced = coalescedMethods.get(method);
+		if (coalesced == null) {
+			coalesced = method.isAnnotationPresent(Idempotent.class) || methodNames.contains(method.getName());
+			coalescedMethods.put(method, coalesced);
+		}
+		return coalesced;
+	}
+
+	/**
+	 * Result of a call shared by the invocations joining it, only the owner thread reads and writes {@code started}
+	 */
+	private static final class InFlightCall extends CompletableFuture<Object> {
+
+		private final CallKey callKey;
+		private final Thread owner = Thread.currentThread();
+		private boolean started;
+
+		InFlightCall(CallKey callKey) {
+			this.callKey = callKey;
+		}
+	}
+
+	private static final class CallKey {
+
+		private Method method;
+		private Object[] args;
+		private int hashCode;
+
+		CallKey() {
+		}
+
+		CallKey(Method method, Object[] args) {
+			set(method, args);
+		}
+
+		CallKey set(Method method, Object[] args) {
+			this.method = method;
+			this.args = args;
+			this.hashCode = method != null ? 31 * method.hashCode() + Arrays.deepHashCode(args) : 0;
+			return this;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof CallKey))
+				return false;
+
+			CallKey other = (CallKey) obj;
+			return hashCode == other.hashCode && method.equals(other.method) && Arrays.deepEquals(args, other.args);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
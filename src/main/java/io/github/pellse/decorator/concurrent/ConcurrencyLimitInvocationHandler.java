@@ -0,0 +1,130 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.github.pellse.decorator.aop.DelegateInvocationHandler;
+
+/**
+ * Caps the number of concurrent calls forwarded to the delegate, calls over the limit
+ * wait up to {@code maxWait} for a slot and are rejected with a {@link RejectedExecutionException} after that.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class ConcurrencyLimitInvocationHandler<T> implements DelegateInvocationHandler<T> {
+
+	private final AdaptiveConcurrencyLimit defaultLimit;
+	private final Map<String, AdaptiveConcurrencyLimit> methodLimits;
+	private final long maxWaitNanos;
+
+	ConcurrencyLimitInvocationHandler(AdaptiveConcurrencyLimit defaultLimit, Map<String, AdaptiveConcurrencyLimit> methodLimits, long maxWaitNanos) {
+		this.defaultLimit = defaultLimit;
+		this.methodLimits = methodLimits;
+		this.maxWaitNanos = maxWaitNanos;
+	}
+
+	@Override
+	public Object invoke(T delegate, Method method, Object[] args) throws Throwable {
+		AdaptiveConcurrencyLimit limit = getLimit(method.getName());
+
+		if (!limit.tryAcquire(maxWaitNanos))
+			throw new RejectedExecutionException("Concurrency limit of " + limit.getLimit() + " reached for " + method);
+
+		long start = System.nanoTime();
+		try {
+			return invokeAndUnwrap(delegate, method, args);
+		} finally {
+			limit.release(System.nanoTime() - start);
+		}
+	}
+
+	public AdaptiveConcurrencyLimit getLimit(String methodName) {
+		return methodLimits.getOrDefault(methodName, defaultLimit);
+	}
+
+	public static <T> Builder<T> builder() {
+		return new Builder<>();
+	}
+
+	public static class Builder<T> {
+
+		private int initialLimit = 20;
+		private int minLimit = 1;
+		private int maxLimit = 1000;
+		private long latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(100);
+		private double backoffRatio = 0.9;
+		private long maxWaitNanos;
+
+		private final Map<String, Integer> methodInitialLimits = new HashMap<>();
+
+		Builder() {
+		}
+
+		public Builder<T> initialLimit(int initialLimit) {
+			this.initialLimit = initialLimit;
+			return this;
+		}
+
+		public Builder<T> minLimit(int minLimit) {
+			this.minLimit = minLimit;
+			return this;
+		}
+
+		public Builder<T> maxLimit(int maxLimit) {
+			this.maxLimit = maxLimit;
+			return this;
+		}
+
+		public Builder<T> latencyThreshold(long latencyThreshold, TimeUnit unit) {
+			this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+			return this;
+		}
+
+		public Builder<T> backoffRatio(double backoffRatio) {
+			this.backoffRatio = backoffRatio;
+			return this;
+		}
+
+		public Builder<T> maxWait(long maxWait, TimeUnit unit) {
+			this.maxWaitNanos = unit.toNanos(maxWait);
+			return this;
+		}
+
+		public Builder<T> limit(String methodName, int initialLimit) {
+			methodInitialLimits.put(methodName, initialLimit);
+			return this;
+		}
+
+		public ConcurrencyLimitInvocationHandler<T> build() {
+			Map<String, AdaptiveConcurrencyLimit> methodLimits = new HashMap<>();
+			methodInitialLimits.forEach((methodName, limit) -> methodLimits.put(methodName, newLimit(limit)));
+
+			return new ConcurrencyLimitInvocationHandler<>(newLimit(initialLimit), methodLimits, maxWaitNanos);
+		}
+
+		private AdaptiveConcurrencyLimit newLimit(int initialLimit) {
+			return new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, latencyThresholdNanos, backoffRatio);
+		}
+	}
+}
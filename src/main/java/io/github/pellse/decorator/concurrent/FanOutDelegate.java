@@ -0,0 +1,276 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+import static java.util.Arrays.stream;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+
+import io.github.pellse.decorator.util.concurrent.BackgroundExecutors;
+
+/**
+ * Forwards each call to several delegates in parallel, e.g. a primary and a secondary store on a dual write path,
+ * so the latency of a call is the one of the slowest delegate instead of the sum of all of them.
+ * The results are combined per method according to a {@link Policy} or a reducer:
+ *
+ * <pre>
+ * Map&lt;String, Entity&gt; store = FanOutDelegate.builder(Map.class, primaryStore, replicaStore)
+ *	.policy("get", Policy.FIRST_SUCCESS)
+ *	.reducer("size", Math::max)
+ *	.build();
+ * </pre>
+ *
+ * The first delegate is invoked on the calling thread, the other ones on the configured executor,
+ * virtual threads by default when running on a JVM supporting them.
+ * With {@link Policy#FIRST_SUCCESS} every delegate is invoked on the executor so a slow first delegate never delays the result.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class FanOutDelegate implements InvocationHandler {
+
+	public enum Policy {
+		/**
+		 * Waits for every delegate and returns the result of the first one, fails if any delegate fails
+		 */
+		ALL,
+		/**
+		 * Returns the first successful result without waiting for the other delegates, fails only if every delegate fails
+		 */
+		FIRST_SUCCESS
+	}
+
+	private final Object[] delegates;
+	private final Executor executor;
+	private final Policy defaultPolicy;
+	private final Map<Method, Policy> policies;
+	private final Map<Method, BinaryOperator<Object>> reducers;
+
+	FanOutDelegate(Object[] delegates, Executor executor, Policy defaultPolicy, Map<Method, Policy> policies, Map<Method, BinaryOperator<Object>> reducers) {
+		this.delegates = delegates;
+		this.executor = executor;
+		this.defaultPolicy = defaultPolicy;
+		this.policies = policies;
+		this.reducers = reducers;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class)
+			return invokeObjectMethod(proxy, method, args);
+
+		BinaryOperator<Object> reducer = reducers.get(method);
+		if (reducer != null) {
+			List<Object> results = invokeAll(method, args);
+
+			Object result = results.get(0);
+			for (int i = 1; i < results.size(); i++)
+				result = reducer.apply(result, results.get(i));
+
+			return result;
+		}
+
+		return policies.getOrDefault(method, defaultPolicy) == Policy.FIRST_SUCCESS ? invokeFirstSuccess(method, args) : invokeAll(method, args).get(0);
+	}
+
+	private List<Object> invokeAll(Method method, Object[] args) throws Throwable {
+		List<CompletableFuture<Object>> futures = new ArrayList<>(delegates.length - 1);
+		for (int i = 1; i < delegates.length; i++)
+			futures.add(invokeAsync(delegates[i], method, args));
+
+		List<Object> results = new ArrayList<>(delegates.length);
+		Throwable failure = null;
+		try {
+			results.add(invokeAndUnwrap(delegates[0], method, args));
+		} catch (Throwable e) {
+			failure = e;
+		}
+
+		for (CompletableFuture<Object> future : futures) {
+			try {
+				results.add(await(future));
+			} catch (Throwable e) {
+				if (failure == null)
+					failure = e;
+				else
+					failure.addSuppressed(e);
+			}
+		}
+
+		if (failure != null)
+			throw failure;
+
+		return results;
+	}
+
+	private Object invokeFirstSuccess(Method method, Object[] args) throws Throwable {
+		CompletableFuture<Object> result = new CompletableFuture<>();
+		AtomicInteger remaining = new AtomicInteger(delegates.length);
+		List<Throwable> failures = new ArrayList<>();
+
+		for (Object delegate : delegates) {
+			invokeAsync(delegate, method, args).whenComplete((value, failure) -> {
+				if (failure == null)
+					result.complete(value);
+				else
+					onFailure(result, remaining, failures, failure);
+			});
+		}
+
+		return await(result);
+	}
+
+	private static void onFailure(CompletableFuture<Object> result, AtomicInteger remaining, List<Throwable> failures, Throwable failure) {
+		synchronized (failures) {
+			failures.add(failure instanceof CompletionException ? failure.getCause() : failure);
+		}
+
+		if (remaining.decrementAndGet() == 0) {
+			synchronized (failures) {
+				Throwable firstFailure = failures.get(0);
+				failures.stream().skip(1).forEach(firstFailure::addSuppressed);
+				result.completeExceptionally(firstFailure);
+			}
+		}
+	}
+
+	private CompletableFuture<Object> invokeAsync(Object delegate, Method method, Object[] args) {
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		executor.execute(() -> {
+			try {
+				future.complete(invokeAndUnwrap(delegate, method, args));
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	private static Object await(CompletableFuture<Object> future) throws Throwable {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw e.getCause();
+		}
+	}
+
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+		switch (method.getName()) {
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		default:
+			return "FanOut" + stream(delegates).map(String::valueOf).collect(Collectors.joining(", ", "[", "]"));
+		}
+	}
+
+	@SafeVarargs
+	public static <I> Builder<I> builder(Class<I> type, I... delegates) {
+		List<I> delegateList = new ArrayList<>(delegates.length);
+		for (I delegate : delegates)
+			delegateList.add(delegate);
+
+		return builder(type, delegateList);
+	}
+
+	public static <I> Builder<I> builder(Class<I> type, List<? extends I> delegates) {
+		return new Builder<>(type, delegates);
+	}
+
+	public static class Builder<I> {
+
+		private final Class<I> type;
+		private final List<? extends I> delegates;
+
+		private Executor executor = BackgroundExecutors.defaultExecutor();
+		private Policy defaultPolicy = Policy.ALL;
+
+		private final Map<String, Policy> policies = new HashMap<>();
+		private final Map<String, BinaryOperator<Object>> reducers = new HashMap<>();
+
+		Builder(Class<I> type, List<? extends I> delegates) {
+			if (!type.isInterface())
+				throw new IllegalArgumentException("Only interfaces can be fanned out, " + type.getName() + " is a class");
+
+			if (delegates.isEmpty())
+				throw new IllegalArgumentException("At least one delegate is required");
+
+			delegates.forEach(delegate -> Objects.requireNonNull(delegate, "Delegates cannot be null"));
+
+			this.type = type;
+			this.delegates = delegates;
+		}
+
+		public Builder<I> executor(Executor executor) {
+			this.executor = Objects.requireNonNull(executor);
+			return this;
+		}
+
+		public Builder<I> defaultPolicy(Policy defaultPolicy) {
+			this.defaultPolicy = Objects.requireNonNull(defaultPolicy);
+			return this;
+		}
+
+		public Builder<I> policy(String methodName, Policy policy) {
+			policies.put(methodName, Objects.requireNonNull(policy));
+			return this;
+		}
+
+		/**
+		 * Waits for every delegate and combines their results in delegate order with {@code reducer}
+		 */
+		@SuppressWarnings("unchecked")
+		public <R> Builder<I> reducer(String methodName, BinaryOperator<R> reducer) {
+			reducers.put(methodName, (BinaryOperator<Object>) reducer);
+			return this;
+		}
+
+		@SuppressWarnings("unchecked")
+		public <T extends I> T build() {
+			Map<Method, Policy> methodPolicies = new HashMap<>();
+			Map<Method, BinaryOperator<Object>> methodReducers = new HashMap<>();
+
+			for (Method method : type.getMethods()) {
+				BinaryOperator<Object> reducer = reducers.get(method.getName());
+				if (reducer != null)
+					methodReducers.put(method, reducer);
+
+				Policy policy = policies.get(method.getName());
+				if (policy != null)
+					methodPolicies.put(method, policy);
+			}
+
+			return (T) Proxy.newProxyInstance(type.getClassLoader(),
+					new Class<?>[] {type},
+					new FanOutDelegate(delegates.toArray(), executor, defaultPolicy, methodPolicies, methodReducers));
+		}
+	}
+}
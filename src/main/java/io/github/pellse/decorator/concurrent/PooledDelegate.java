@@ -0,0 +1,192 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lets a non thread safe component be shared between threads: each call borrows an idle instance from a bounded pool,
+ * creating a new one with the factory while the pool is under its maximum size, and returns it once the call completes.
+ * Calls wait up to {@code maxWait} for an idle instance and are rejected with a {@link RejectedExecutionException} after that.
+ * <p>
+ * Idle instances are kept in a blocking queue, waiting callers are woken up as soon as an instance is returned.
+ * With thread affinity each thread first tries to borrow the instance it used last, keeping that instance's state warm in its cache.
+ *
+ * <pre>
+ * Parser parser = PooledDelegate.builder(Parser.class, XmlParser::new)
+ *	.maxSize(8)
+ *	.build();
+ * </pre>
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class PooledDelegate implements InvocationHandler {
+
+	private final Supplier<?> factory;
+	private final int maxSize;
+	private final BlockingQueue<PooledInstance> idleInstances;
+	private final AtomicInteger createdCount = new AtomicInteger();
+	private final ThreadLocal<PooledInstance> lastUsedInstance;
+	private final long maxWaitNanos;
+
+	PooledDelegate(Supplier<?> factory, int maxSize, boolean threadAffinity, long maxWaitNanos) {
+		this.factory = factory;
+		this.maxSize = maxSize;
+		this.idleInstances = new LinkedBlockingQueue<>(maxSize);
+		this.lastUsedInstance = threadAffinity ? new ThreadLocal<>() : null;
+		this.maxWaitNanos = maxWaitNanos;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class)
+			return invokeObjectMethod(proxy, method, args);
+
+		PooledInstance pooledInstance = borrow();
+		try {
+			return invokeAndUnwrap(pooledInstance.instance, method, args);
+		} finally {
+			release(pooledInstance);
+		}
+	}
+
+	private PooledInstance borrow() {
+		if (lastUsedInstance != null) {
+			PooledInstance lastUsed = lastUsedInstance.get();
+			if (lastUsed != null && idleInstances.remove(lastUsed))
+				return lastUsed;
+		}
+
+		PooledInstance pooledInstance = idleInstances.poll();
+		if (pooledInstance != null)
+			return pooledInstance;
+
+		for (int created = createdCount.get(); created < maxSize; created = createdCount.get()) {
+			if (createdCount.compareAndSet(created, created + 1))
+				return create();
+		}
+
+		try {
+			pooledInstance = idleInstances.poll(maxWaitNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for an idle instance", e);
+		}
+
+		if (pooledInstance == null)
+			throw new RejectedExecutionException("No idle instance available in pool of " + maxSize);
+
+		return pooledInstance;
+	}
+
+	private PooledInstance create() {
+		try {
+			return new PooledInstance(Objects.requireNonNull(factory.get(), "Pool factory returned null"));
+		} catch (RuntimeException | Error e) {
+			createdCount.decrementAndGet();
+			throw e;
+		}
+	}
+
+	private void release(PooledInstance pooledInstance) {
+		if (lastUsedInstance != null)
+			lastUsedInstance.set(pooledInstance);
+
+		idleInstances.offer(pooledInstance);
+	}
+
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+		switch (method.getName()) {
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		default:
+			return "Pooled[created=" + createdCount.get() + ", maxSize=" + maxSize + "]";
+		}
+	}
+
+	/**
+	 * Compared by identity so that pooled instances overriding {@code equals()} are never mistaken for one another
+	 */
+	private static final class PooledInstance {
+
+		private final Object instance;
+
+		PooledInstance(Object instance) {
+			this.instance = instance;
+		}
+	}
+
+	public static <I> Builder<I> builder(Class<I> type, Supplier<? extends I> factory) {
+		return new Builder<>(type, factory);
+	}
+
+	public static class Builder<I> {
+
+		private final Class<I> type;
+		private final Supplier<? extends I> factory;
+
+		private int maxSize = Runtime.getRuntime().availableProcessors();
+		private boolean threadAffinity = true;
+		private long maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+
+		Builder(Class<I> type, Supplier<? extends I> factory) {
+			if (!type.isInterface())
+				throw new IllegalArgumentException("Only interfaces can be pooled, " + type.getName() + " is a class");
+
+			this.type = type;
+			this.factory = factory;
+		}
+
+		public Builder<I> maxSize(int maxSize) {
+			if (maxSize < 1)
+				throw new IllegalArgumentException("maxSize must be greater than 0, was " + maxSize);
+
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		public Builder<I> threadAffinity(boolean threadAffinity) {
+			this.threadAffinity = threadAffinity;
+			return this;
+		}
+
+		public Builder<I> maxWait(long maxWait, TimeUnit unit) {
+			this.maxWaitNanos = unit.toNanos(maxWait);
+			return this;
+		}
+
+		@SuppressWarnings("unchecked")
+		public <T extends I> T build() {
+			return (T) Proxy.newProxyInstance(type.getClassLoader(),
+					new Class<?>[] {type},
+					new PooledDelegate(factory, maxSize, threadAffinity, maxWaitNanos));
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+import static java.util.Arrays.stream;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Spreads the state of a component over several independent instances created by a factory,
+ * each call is routed to one shard by a key extracted from its arguments, either the argument annotated with {@link ShardKey}
+ * or the one returned by a key extractor registered for the method.
+ * Methods with a registered reducer are invoked on every shard and their results combined,
+ * methods explicitly registered for thread affinity are routed by the calling thread:
+ *
+ * <pre>
+ * public interface Counters {
+ *	void increment(&#64;ShardKey String name);
+ *	long get(&#64;ShardKey String name);
+ *	long total();
+ * }
+ *
+ * Counters counters = ShardedDelegate.builder(Counters.class, MapCounters::new)
+ *	.shards(8)
+ *	.reducer("total", Long::sum)
+ *	.build();
+ * </pre>
+ *
+ * Every method of the interface must be routed, {@link Builder#build()} fails otherwise.
+ * The returned object can then be decorated like any other root object.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class ShardedDelegate implements InvocationHandler {
+
+	private static final Function<Object[], ?> THREAD_AFFINITY = args -> Thread.currentThread().getId();
+
+	private final Object[] shards;
+	private final Map<Method, Function<Object[], ?>> keyExtractors;
+	private final Map<Method, BinaryOperator<Object>> reducers;
+
+	ShardedDelegate(Object[] shards, Map<Method, Function<Object[], ?>> keyExtractors, Map<Method, BinaryOperator<Object>> reducers) {
+		this.shards = shards;
+		this.keyExtractors = keyExtractors;
+		this.reducers = reducers;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class)
+			return invokeObjectMethod(proxy, method, args);
+
+		BinaryOperator<Object> reducer = reducers.get(method);
+		if (reducer != null) {
+			Object result = invokeAndUnwrap(shards[0], method, args);
+			for (int i = 1; i < shards.length; i++)
+				result = reducer.apply(result, invokeAndUnwrap(shards[i], method, args));
+
+			return result;
+		}
+
+		int hash = Objects.hashCode(keyExtractors.get(method).apply(args));
+		return invokeAndUnwrap(shards[shardIndex(hash)], method, args);
+	}
+
+	private int shardIndex(int hash) {
+		int spreadHash = hash ^ (hash >>> 16);
+		return Math.floorMod(spreadHash, shards.length);
+	}
+
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+		switch (method.getName()) {
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		default:
+			return "Sharded" + stream(shards).map(String::valueOf).collect(Collectors.joining(", ", "[", "]"));
+		}
+	}
+
+	public static <I> Builder<I> builder(Class<I> type, Supplier<? extends I> shardFactory) {
+		return new Builder<>(type, shardFactory);
+	}
+
+	public static class Builder<I> {
+
+		private final Class<I> type;
+		private final Supplier<? extends I> shardFactory;
+
+		private int nbShards = Runtime.getRuntime().availableProcessors();
+
+		private final Map<String, Function<Object[], ?>> keyExtractors = new HashMap<>();
+		private final Map<String, BinaryOperator<Object>> reducers = new HashMap<>();
+
+		Builder(Class<I> type, Supplier<? extends I> shardFactory) {
+			if (!type.isInterface())
+				throw new IllegalArgumentException("Only interfaces can be sharded, " + type.getName() + " is a class");
+
+			this.type = type;
+			this.shardFactory = shardFactory;
+		}
+
+		public Builder<I> shards(int nbShards) {
+			if (nbShards < 1)
+				throw new IllegalArgumentException("nbShards must be greater than 0, was " + nbShards);
+
+			this.nbShards = nbShards;
+			return this;
+		}
+
+		/**
+		 * Routes the calls to the methods with the given name by the key returned by {@code keyExtractor} from the call arguments
+		 */
+		public Builder<I> key(String methodName, Function<Object[], ?> keyExtractor) {
+			keyExtractors.put(methodName, keyExtractor);
+			return this;
+		}
+
+		/**
+		 * Routes the calls to the methods with the given name by the calling thread,
+		 * for methods whose result is only meaningful to the thread that called them, e.g. per thread buffers
+		 */
+		public Builder<I> threadAffinity(String methodName) {
+			return key(methodName, THREAD_AFFINITY);
+		}
+
+		/**
+		 * Invokes the methods with the given name on every shard and combines their results with {@code reducer}
+		 */
+		@SuppressWarnings("unchecked")
+		public <R> Builder<I> reducer(String methodName, BinaryOperator<R> reducer) {
+			reducers.put(methodName, (BinaryOperator<Object>) reducer);
+			return this;
+		}
+
+		/**
+		 * @throws IllegalStateException if a method of the interface has neither a key, a reducer nor thread affinity
+		 */
+		@SuppressWarnings("unchecked")
+		public <T extends I> T build() {
+			Map<Method, Function<Object[], ?>> methodKeyExtractors = new HashMap<>();
+			Map<Method, BinaryOperator<Object>> methodReducers = new HashMap<>();
+			List<String> unroutedMethods = new ArrayList<>();
+
+			for (Method method : type.getMethods()) {
+				if (isObjectMethod(method))
+					continue;
+
+				BinaryOperator<Object> reducer = reducers.get(method.getName());
+				if (reducer != null) {
+					methodReducers.put(method, reducer);
+					continue;
+				}
+
+				Function<Object[], ?> keyExtractor = keyExtractors.get(method.getName());
+				if (keyExtractor == null)
+					keyExtractor = annotatedKeyExtractor(method);
+
+				if (keyExtractor != null)
+					methodKeyExtractors.put(method, keyExtractor);
+				else
+					unroutedMethods.add(method.toGenericString());
+			}
+
+			if (!unroutedMethods.isEmpty())
+				throw new IllegalStateException("No key, reducer or thread affinity registered for " + unroutedMethods);
+
+			List<I> shards = IntStream.range(0, nbShards)
+					.mapToObj(i -> Objects.requireNonNull((I) shardFactory.get(), "Shard factory returned null"))
+					.collect(Collectors.toList());
+
+			return (T) Proxy.newProxyInstance(type.getClassLoader(),
+					new Class<?>[] {type},
+					new ShardedDelegate(shards.toArray(), methodKeyExtractors, methodReducers));
+		}
+
+		private static boolean isObjectMethod(Method method) {
+			try {
+				Object.class.getMethod(method.getName(), method.getParameterTypes());
+				return true;
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+
+		private static Function<Object[], ?> annotatedKeyExtractor(Method method) {
+			return IntStream.range(0, method.getParameterCount())
+					.filter(i -> method.getParameters()[i].isAnnotationPresent(ShardKey.class))
+					.<Function<Object[], ?>>mapToObj(i -> args -> args[i])
+					.findFirst()
+					.orElse(null);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.base.Defaults;
+
+import io.github.pellse.decorator.aop.DelegateInvocationHandler;
+
+/**
+ * Runs {@code void} and {@link FireAndForget} methods on a background worker fed by a bounded queue,
+ * all other methods are invoked synchronously. Asynchronous invocations are executed in submission order,
+ * so a handler instance should not be shared between unrelated decorated instances.
+ * The delegate is accessed from both the caller and the worker thread and must therefore be thread safe.
+ * The worker ignores interrupts so that queued invocations and pending {@link #flush()} calls are never abandoned,
+ * it is only stopped by {@link #close()}.
+ * <p>
+ * A generated type extending {@link WriteBehind} exposes {@link #flush()} to the callers of the decorated instance.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class WriteBehindInvocationHandler<T> implements DelegateInvocationHandler<T>, WriteBehind, AutoCloseable {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	private static final Runnable POISON_PILL = () -> {};
+
+	private final BlockingQueue<Runnable> queue;
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private final Thread worker;
+
+	private volatile boolean closed;
+
+	public WriteBehindInvocationHandler() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public WriteBehindInvocationHandler(int capacity) {
+		this(capacity, runnable -> {
+			Thread thread = new Thread(runnable, "decorator-write-behind-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public WriteBehindInvocationHandler(int capacity, ThreadFactory threadFactory) {
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.worker = threadFactory.newThread(this::drain);
+		this.worker.start();
+	}
+
+	@Override
+	public Object invoke(T delegate, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == WriteBehind.class) {
+			flush();
+			return null;
+		}
+
+		if (!isAsynchronous(method))
+			return invokeAndUnwrap(delegate, method, args);
+
+		submit(() -> {
+			try {
+				invokeAndUnwrap(delegate, method, args);
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		});
+		return Defaults.defaultValue(method.getReturnType());
+	}
+
+	@Override
+	public void flush() {
+		FutureTask<Void> barrier = new FutureTask<>(() -> {}, null);
+		try {
+			submit(barrier);
+			barrier.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while flushing asynchronous invocations", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+
+		Throwable e = failure.getAndSet(null);
+		if (e != null)
+			throw new IllegalStateException("Asynchronous invocation failed", e);
+	}
+
+	@Override
+	public void close() {
+		if (closed)
+			return;
+
+		try {
+			flush();
+		} finally {
+			closed = true;
+			stopWorker();
+		}
+	}
+
+	protected boolean isAsynchronous(Method method) {
+		return method.getReturnType() == void.class || method.isAnnotationPresent(FireAndForget.class);
+	}
+
+	private void submit(Runnable task) throws InterruptedException {
+		if (closed)
+			throw new IllegalStateException("WriteBehindInvocationHandler is closed");
+
+		queue.put(task);
+	}
+
+	private void stopWorker() {
+		try {
+			queue.put(POISON_PILL);
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void drain() {
+		for (;;) {
+			try {
+				Runnable task = queue.take();
+				if (task == POISON_PILL)
+					return;
+
+				task.run();
+			} catch (InterruptedException e) {
+				// Keep draining, callers blocked in submit() or flush() would otherwise wait forever
+			}
+		}
+	}
+}
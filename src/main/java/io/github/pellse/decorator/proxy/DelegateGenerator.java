@@ -15,8 +15,12 @@
  */
 package io.github.pellse.decorator.proxy;
 
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+
 import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
+import io.github.pellse.decorator.LayerToggle;
 import io.github.pellse.decorator.aop.DelegateInvocationHandler;
 
 public interface DelegateGenerator<I> {
@@ -31,4 +35,38 @@ public interface DelegateGenerator<I> {
 			DelegateInvocationHandler<I> handler, Class<D> generatedType,
 			Class<I> commonDelegateType,
 			ClassLoader classLoader) throws Exception;
+
+	/**
+	 * Generates a delegate creating its target on first access, the default implementation
+	 * is a handler delegate resolving its target through a {@link LazyDelegate}
+	 */
+	default <T extends I> I generateLazyDelegate(Supplier<T> delegateSupplier,
+			Class<I> commonDelegateType,
+			ClassLoader classLoader) throws Exception {
+
+		LazyDelegate<T> lazyDelegate = new LazyDelegate<T>(delegateSupplier) {};
+
+		return generateDelegate(null,
+				(delegate, method, args) -> invokeAndUnwrap(lazyDelegate.getDelegate(), method, args),
+				commonDelegateType,
+				commonDelegateType,
+				classLoader);
+	}
+
+	/**
+	 * Generates a delegate forwarding to {@code layer} while {@code toggle} is enabled and to {@code delegateTarget} otherwise,
+	 * the default implementation is a handler delegate checking the toggle on each call
+	 */
+	default <T extends I> I generateToggleableDelegate(T layer,
+			T delegateTarget,
+			LayerToggle toggle,
+			Class<I> commonDelegateType,
+			ClassLoader classLoader) throws Exception {
+
+		return generateDelegate(delegateTarget,
+				(delegate, method, args) -> invokeAndUnwrap(toggle.isEnabled() ? layer : delegate, method, args),
+				commonDelegateType,
+				commonDelegateType,
+				classLoader);
+	}
 }
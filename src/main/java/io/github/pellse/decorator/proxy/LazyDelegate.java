@@ -0,0 +1,52 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.proxy;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import io.github.pellse.decorator.DelegateProvider;
+
+/**
+ * Base class of generated lazy delegates, the delegate is created on first access
+ * and safely published through double-checked locking on a volatile field.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public abstract class LazyDelegate<T> implements DelegateProvider<T> {
+
+	private final Supplier<? extends T> delegateSupplier;
+
+	private volatile T delegate;
+
+	protected LazyDelegate(Supplier<? extends T> delegateSupplier) {
+		this.delegateSupplier = Objects.requireNonNull(delegateSupplier);
+	}
+
+	@Override
+	public final T getDelegate() {
+		T result = delegate;
+		if (result == null) {
+			synchronized (this) {
+				result = delegate;
+				if (result == null)
+					delegate = result = Objects.requireNonNull(delegateSupplier.get(), "Lazy delegate supplier returned null");
+			}
+		}
+		return result;
+	}
+}
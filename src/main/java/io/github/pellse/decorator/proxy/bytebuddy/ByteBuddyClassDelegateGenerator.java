@@ -15,41 +15,169 @@
  */
 package io.github.pellse.decorator.proxy.bytebuddy;
 
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.insert;
 import static io.github.pellse.decorator.util.reflection.ReflectionUtils.isAbstract;
 import static io.github.pellse.decorator.util.reflection.ReflectionUtils.newInstance;
 import static io.github.pellse.decorator.util.reflection.ReflectionUtils.setField;
+import static java.util.Arrays.stream;
 import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
 import static net.bytebuddy.matcher.ElementMatchers.isDeclaredBy;
 import static net.bytebuddy.matcher.ElementMatchers.isGetter;
 import static net.bytebuddy.matcher.ElementMatchers.not;
 
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
-import org.jctools.maps.NonBlockingHashMap;
+import org.apache.commons.lang3.ArrayUtils;
 
 import io.github.pellse.decorator.DelegateProvider;
+import io.github.pellse.decorator.LayerToggle;
 import io.github.pellse.decorator.aop.DelegateInvocationHandler;
 import io.github.pellse.decorator.proxy.DelegateGenerator;
+import io.github.pellse.decorator.proxy.LazyDelegate;
+import io.github.pellse.decorator.util.concurrent.SingleFlightMap;
 import io.github.pellse.decorator.util.function.CheckedSupplier;
 import net.bytebuddy.ByteBuddy;
 import net.bytebuddy.dynamic.DynamicType.Builder;
 import net.bytebuddy.dynamic.DynamicType.Builder.MethodDefinition.ReceiverTypeDefinition;
 import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.dynamic.scaffold.subclass.ConstructorStrategy;
 import net.bytebuddy.implementation.FieldAccessor;
 import net.bytebuddy.implementation.InvocationHandlerAdapter;
 import net.bytebuddy.implementation.MethodCall;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
 
 public class ByteBuddyClassDelegateGenerator<I> implements DelegateGenerator<I> {
 
 	private static final String DELEGATE_FIELD_NAME = "delegate";
 
-	// TODO: Composite key ClassLoader/GeneratedType
-	private static final Map<Class<?>, Class<?>> CACHE = new NonBlockingHashMap<>();
+	private static final SingleFlightMap<DelegateClassKey, Class<?>> SHARED_CACHE = new SingleFlightMap<>();
+
+	private static final SingleFlightMap<DelegateClassKey, Class<?>> SHARED_FORWARDING_CACHE = new SingleFlightMap<>();
+
+	private static final Map<DelegateClassKey, Set<Class<?>>> SHARED_SPECIALIZATIONS = new ConcurrentHashMap<>();
+
+	private static final Class<?>[] DEFAULT_MARKER_INTERFACES = {RandomAccess.class, Cloneable.class};
+
+	private final SingleFlightMap<DelegateClassKey, Class<?>> cache;
+	private final SingleFlightMap<DelegateClassKey, Class<?>> forwardingCache;
+	private final Map<DelegateClassKey, Set<Class<?>>> specializations;
+
+	private final GenerationMode generationMode;
+	private final ClassLoadingMode classLoadingMode;
+	private final ForwardingPolicy forwardingPolicy;
+	private final Class<?>[] markerInterfaces;
+	private final int maxSpecializedDelegateTypes;
+
+	public ByteBuddyClassDelegateGenerator() {
+		this(SHARED_CACHE, SHARED_FORWARDING_CACHE, SHARED_SPECIALIZATIONS, GenerationMode.FIELD_INJECTION, ClassLoadingMode.INJECTION, ForwardingPolicy.ABSTRACT_ONLY, DEFAULT_MARKER_INTERFACES, 0);
+	}
+
+	private ByteBuddyClassDelegateGenerator(SingleFlightMap<DelegateClassKey, Class<?>> cache,
+			SingleFlightMap<DelegateClassKey, Class<?>> forwardingCache,
+			Map<DelegateClassKey, Set<Class<?>>> specializations,
+			GenerationMode generationMode,
+			ClassLoadingMode classLoadingMode,
+			ForwardingPolicy forwardingPolicy,
+			Class<?>[] markerInterfaces,
+			int maxSpecializedDelegateTypes) {
+		this.cache = cache;
+		this.forwardingCache = forwardingCache;
+		this.specializations = specializations;
+		this.generationMode = Objects.requireNonNull(generationMode);
+		this.classLoadingMode = Objects.requireNonNull(classLoadingMode);
+		this.forwardingPolicy = Objects.requireNonNull(forwardingPolicy);
+		this.markerInterfaces = markerInterfaces;
+		this.maxSpecializedDelegateTypes = maxSpecializedDelegateTypes;
+	}
+
+	public ByteBuddyClassDelegateGenerator<I> withGenerationMode(GenerationMode generationMode) {
+		return new ByteBuddyClassDelegateGenerator<>(cache, forwardingCache, specializations, generationMode, classLoadingMode, forwardingPolicy, markerInterfaces, maxSpecializedDelegateTypes);
+	}
+
+	public ByteBuddyClassDelegateGenerator<I> withClassLoadingMode(ClassLoadingMode classLoadingMode) {
+		return new ByteBuddyClassDelegateGenerator<>(cache, forwardingCache, specializations, generationMode, classLoadingMode, forwardingPolicy, markerInterfaces, maxSpecializedDelegateTypes);
+	}
+
+	public ByteBuddyClassDelegateGenerator<I> withForwardingPolicy(ForwardingPolicy forwardingPolicy) {
+		return new ByteBuddyClassDelegateGenerator<>(cache, forwardingCache, specializations, generationMode, classLoadingMode, forwardingPolicy, markerInterfaces, maxSpecializedDelegateTypes);
+	}
+
+	/**
+	 * Returns a generator whose generated classes also implement the given marker interfaces when the decorated object implements them,
+	 * by default {@link RandomAccess} and {@link Cloneable} are propagated, no marker interface is propagated when none is given.
+	 * <p>
+	 * {@link Serializable} is not propagated by default: generated class names are random so decorated instances can only
+	 * be deserialized in the JVM that serialized them, and it is never propagated to layers implemented with a dynamic proxy.
+	 */
+	public ByteBuddyClassDelegateGenerator<I> withMarkerInterfaces(Class<?>... markerInterfaces) {
+		return new ByteBuddyClassDelegateGenerator<>(cache, forwardingCache, specializations, generationMode, classLoadingMode, forwardingPolicy, markerInterfaces.clone(), maxSpecializedDelegateTypes);
+	}
+
+	/**
+	 * Returns a generator that generates a separate class per partial type and concrete delegate class, for up to
+	 * {@code maxSpecializedDelegateTypes} delegate classes per partial type, so that the call sites forwarding to the delegate
+	 * stay monomorphic when the same partial type decorates objects of different classes.
+	 * Delegate classes over that limit share a single class, specialization is disabled when the limit is 0 (the default).
+	 */
+	public ByteBuddyClassDelegateGenerator<I> withSpecialization(int maxSpecializedDelegateTypes) {
+		if (maxSpecializedDelegateTypes < 0)
+			throw new IllegalArgumentException("maxSpecializedDelegateTypes must be positive, was " + maxSpecializedDelegateTypes);
+
+		return new ByteBuddyClassDelegateGenerator<>(cache, forwardingCache, specializations, generationMode, classLoadingMode, forwardingPolicy, markerInterfaces, maxSpecializedDelegateTypes);
+	}
+
+	/**
+	 * Returns a generator with the same configuration whose generated classes are cached separately
+	 * from the process wide cache shared by generators created with the default constructor.
+	 */
+	public ByteBuddyClassDelegateGenerator<I> withPrivateCache() {
+		return new ByteBuddyClassDelegateGenerator<>(new SingleFlightMap<>(), new SingleFlightMap<>(), new ConcurrentHashMap<>(), generationMode, classLoadingMode, forwardingPolicy, markerInterfaces, maxSpecializedDelegateTypes);
+	}
+
+	public int getCachedClassCount() {
+		return cache.size() + forwardingCache.size();
+	}
+
+	public void clearCache() {
+		cache.clear();
+		forwardingCache.clear();
+		specializations.clear();
+	}
+
+	public GenerationMode getGenerationMode() {
+		return generationMode;
+	}
+
+	public ClassLoadingMode getClassLoadingMode() {
+		return classLoadingMode;
+	}
+
+	public ForwardingPolicy getForwardingPolicy() {
+		return forwardingPolicy;
+	}
+
+	public Class<?>[] getMarkerInterfaces() {
+		return markerInterfaces.clone();
+	}
+
+	public int getMaxSpecializedDelegateTypes() {
+		return maxSpecializedDelegateTypes;
+	}
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -59,18 +187,22 @@ public class ByteBuddyClassDelegateGenerator<I> implements DelegateGenerator<I>
 			BiFunction<Class<D>, T, D> instanceCreator,
 			ClassLoader classLoader) {
 
-		Function<? super Class<?>, ? extends Class<?>> classGenerator = clazz -> generateDelegate(delegateTarget,
-					(Class<D>) clazz,
+		Class<?>[] propagatedMarkerInterfaces = propagatedMarkerInterfaces(delegateTarget, generatedType);
+
+		Function<DelegateClassKey, Class<?>> classGenerator = key -> generateDelegateClass(delegateTarget,
+					generatedType,
 					commonDelegateType,
-					builder -> builder.method(isAbstract().and(not(isDeclaredBy(DelegateProvider.class))))
+					builder -> builder.method(forwardingPolicy.forwardedMethods(commonDelegateType).and(not(isDeclaredBy(DelegateProvider.class))))
 						.intercept(MethodCall.invokeSelf().onField(DELEGATE_FIELD_NAME).withAllArguments()),
+					generationMode,
+					propagatedMarkerInterfaces,
 					classLoader);
 
 		D generatedInstance = instanceCreator.apply(
-			isAbstract(generatedType) ? (Class<D>) CACHE.computeIfAbsent(generatedType, classGenerator) : generatedType,
+			isAbstract(generatedType) ? (Class<D>) cache.computeIfAbsent(delegateClassKey(delegateTarget, generatedType, propagatedMarkerInterfaces, classLoader), classGenerator) : generatedType,
 			delegateTarget);
 
-		if (generatedInstance.getClass() != generatedType)
+		if (generationMode == GenerationMode.FIELD_INJECTION && generatedInstance.getClass() != generatedType)
 			setField(generatedInstance, CheckedSupplier.of(() -> generatedInstance.getClass().getDeclaredField(DELEGATE_FIELD_NAME)).get(), delegateTarget);
 
 		return generatedInstance;
@@ -87,41 +219,162 @@ public class ByteBuddyClassDelegateGenerator<I> implements DelegateGenerator<I>
 		if (generatedType.isInterface())
 			return (D)Proxy.newProxyInstance(
 				classLoader,
-				new Class<?>[] {generatedType},
+				insert(proxyMarkerInterfaces(delegateTarget, generatedType), 0, generatedType),
 				(proxy, method, args) -> handler.invoke(delegateTarget, method, args));
 
 		// TODO: Implement caching of generated proxy when proxying a class instead of an interface
 		// This should be a very infrequent case, so not urgent to fix
-		Class<D> delegateClass = generateDelegate(delegateTarget,
+		Class<D> delegateClass = generateDelegateClass(delegateTarget,
 				generatedType,
 				commonDelegateType,
 				builder -> builder.method(not(isDeclaredBy(Object.class)))
 					.intercept(InvocationHandlerAdapter.of((proxy, method, args) -> handler.invoke(delegateTarget, method, args))),
+				GenerationMode.FIELD_INJECTION,
+				propagatedMarkerInterfaces(delegateTarget, generatedType),
 				classLoader);
 
 		return newInstance(delegateClass);
 	}
 
 	@SuppressWarnings("unchecked")
-	static <I, D extends I, T extends I> Class<D> generateDelegate(T delegateTarget,
+	@Override
+	public <T extends I> I generateLazyDelegate(Supplier<T> delegateSupplier, Class<I> commonDelegateType, ClassLoader classLoader) {
+
+		if (!commonDelegateType.isInterface())
+			return CheckedSupplier.of(() -> DelegateGenerator.super.generateLazyDelegate(delegateSupplier, commonDelegateType, classLoader)).get();
+
+		Class<?> lazyDelegateClass = generateForwardingClass(LazyDelegate.class, "getDelegate", commonDelegateType, classLoader);
+
+		return (I) CheckedSupplier.of(() -> lazyDelegateClass.getConstructor(Supplier.class).newInstance(delegateSupplier)).get();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T extends I> I generateToggleableDelegate(T layer, T delegateTarget, LayerToggle toggle, Class<I> commonDelegateType, ClassLoader classLoader) {
+
+		if (!commonDelegateType.isInterface())
+			return CheckedSupplier.of(() -> DelegateGenerator.super.generateToggleableDelegate(layer, delegateTarget, toggle, commonDelegateType, classLoader)).get();
+
+		Class<?> toggleableDelegateClass = generateForwardingClass(ToggleableDelegate.class, "getTarget", commonDelegateType, classLoader);
+
+		return (I) CheckedSupplier.of(() -> toggleableDelegateClass.getConstructor(Object.class, Object.class, LayerToggle.class).newInstance(layer, delegateTarget, toggle)).get();
+	}
+
+	/**
+	 * Generates a subclass of {@code baseClass} implementing {@code commonDelegateType} by forwarding each method
+	 * to the object returned by the {@code targetMethodName} method of the base class
+	 */
+	private Class<?> generateForwardingClass(Class<?> baseClass, String targetMethodName, Class<I> commonDelegateType, ClassLoader classLoader) {
+		return forwardingCache.computeIfAbsent(new DelegateClassKey(commonDelegateType, classLoader, baseClass), key -> CheckedSupplier.of(() -> {
+			return new ByteBuddy()
+				.subclass(baseClass)
+				.implement(commonDelegateType)
+				.method(isAbstract())
+					.intercept(MethodCall.invokeSelf()
+						.onMethodCall(MethodCall.invoke(baseClass.getMethod(targetMethodName)))
+						.withAllArguments()
+						.withAssigner(Assigner.DEFAULT, Assigner.Typing.DYNAMIC))
+				.make()
+				.load(Optional.ofNullable(classLoader).orElse(ByteBuddyClassDelegateGenerator.class.getClassLoader()), ClassLoadingStrategy.Default.INJECTION)
+				.getLoaded();
+		}).get());
+	}
+
+	@SuppressWarnings("unchecked")
+	private <D extends I, T extends I> Class<D> generateDelegateClass(T delegateTarget,
 			Class<D> generatedType,
 			Class<I> commonDelegateType,
 			Function<Builder<?>, ReceiverTypeDefinition<?>> interceptStrategy,
+			GenerationMode generationMode,
+			Class<?>[] propagatedMarkerInterfaces,
 			ClassLoader classLoader) {
 
+		boolean constructorInjection = generationMode == GenerationMode.CONSTRUCTOR_INJECTION;
+		ConstructorStrategy constructorStrategy = constructorInjection ?
+				ConstructorStrategy.Default.NO_CONSTRUCTORS :
+				ConstructorStrategy.Default.IMITATE_SUPER_CLASS_OPENING;
+
 		Function<ByteBuddy, Builder<?>> builderFactory = byteBuddy -> generatedType.isInterface() ?
-				byteBuddy.subclass(Object.class).implement(generatedType) :
-				byteBuddy.subclass(generatedType);
+				byteBuddy.subclass(Object.class, constructorStrategy).implement(generatedType) :
+				byteBuddy.subclass(generatedType, constructorStrategy);
+
+		ClassLoadingStrategy<ClassLoader> classLoadingStrategy = LookupClassLoadingStrategy.of(classLoadingMode, generatedType);
 
 		return CheckedSupplier.of(() -> {
-			return (Class<D>) builderFactory.andThen(interceptStrategy).apply(new ByteBuddy())
-				.defineField(DELEGATE_FIELD_NAME, commonDelegateType, Modifier.PRIVATE)
+			Builder<?> builder = builderFactory.andThen(interceptStrategy).apply(LookupClassLoadingStrategy.newByteBuddy(classLoadingStrategy, generatedType))
+				.defineField(DELEGATE_FIELD_NAME, commonDelegateType, constructorInjection ? Modifier.PRIVATE | Modifier.FINAL : Modifier.PRIVATE)
 				.implement(DelegateProvider.class)
+				.implement(propagatedMarkerInterfaces)
 				.method(isAbstract().and(isGetter(commonDelegateType).or(isDeclaredBy(DelegateProvider.class))))
-					.intercept(FieldAccessor.ofField(DELEGATE_FIELD_NAME))
+					.intercept(FieldAccessor.ofField(DELEGATE_FIELD_NAME));
+
+			if (constructorInjection)
+				builder = defineDelegateConstructors(builder.modifiers(Modifier.PUBLIC | Modifier.FINAL), generatedType, commonDelegateType);
+
+			return (Class<D>) builder
 				.make()
-				.load(Optional.ofNullable(classLoader).orElse(ByteBuddyClassDelegateGenerator.class.getClassLoader()), ClassLoadingStrategy.Default.INJECTION)
+				.load(Optional.ofNullable(classLoader).orElse(ByteBuddyClassDelegateGenerator.class.getClassLoader()), classLoadingStrategy)
 				.getLoaded();
 		}).get();
 	}
+
+	private DelegateClassKey delegateClassKey(Object delegateTarget, Class<?> generatedType, Class<?>[] propagatedMarkerInterfaces, ClassLoader classLoader) {
+		DelegateClassKey sharedKey = new DelegateClassKey(generatedType, classLoader, generationMode, classLoadingMode, forwardingPolicy, Arrays.asList(propagatedMarkerInterfaces));
+		if (maxSpecializedDelegateTypes == 0)
+			return sharedKey;
+
+		Class<?> delegateClass = delegateTarget.getClass();
+		Set<Class<?>> specializedDelegateClasses = specializations.computeIfAbsent(sharedKey, key -> new HashSet<>());
+
+		synchronized (specializedDelegateClasses) {
+			if (!specializedDelegateClasses.contains(delegateClass)) {
+				if (specializedDelegateClasses.size() >= maxSpecializedDelegateTypes)
+					return sharedKey;
+
+				specializedDelegateClasses.add(delegateClass);
+			}
+		}
+		return new DelegateClassKey(generatedType, classLoader, generationMode, classLoadingMode, forwardingPolicy, Arrays.asList(propagatedMarkerInterfaces), delegateClass);
+	}
+
+	private Class<?>[] propagatedMarkerInterfaces(Object delegateTarget, Class<?> generatedType) {
+		return stream(markerInterfaces)
+			.filter(markerInterface -> markerInterface.isInstance(delegateTarget) && !markerInterface.isAssignableFrom(generatedType))
+			.toArray(Class<?>[]::new);
+	}
+
+	private Class<?>[] proxyMarkerInterfaces(Object delegateTarget, Class<?> generatedType) {
+		return stream(propagatedMarkerInterfaces(delegateTarget, generatedType))
+			.filter(markerInterface -> markerInterface != Serializable.class)
+			.toArray(Class<?>[]::new);
+	}
+
+	private static Builder<?> defineDelegateConstructors(Builder<?> builder, Class<?> generatedType, Class<?> commonDelegateType) throws NoSuchMethodException {
+
+		if (generatedType.isInterface())
+			return defineDelegateConstructor(builder, Object.class.getConstructor(), commonDelegateType);
+
+		for (Constructor<?> constructor : generatedType.getDeclaredConstructors()) {
+			if (!Modifier.isPrivate(constructor.getModifiers()))
+				builder = defineDelegateConstructor(builder, constructor, commonDelegateType);
+		}
+		return builder;
+	}
+
+	private static Builder<?> defineDelegateConstructor(Builder<?> builder, Constructor<?> superConstructor, Class<?> commonDelegateType) {
+
+		Class<?>[] parameterTypes = superConstructor.getParameterTypes();
+		int delegateIndex = ArrayUtils.indexOf(parameterTypes, commonDelegateType);
+
+		if (delegateIndex > -1)
+			return builder.defineConstructor(Modifier.PUBLIC)
+				.withParameters(parameterTypes)
+				.intercept(MethodCall.invoke(superConstructor).withAllArguments()
+					.andThen(FieldAccessor.ofField(DELEGATE_FIELD_NAME).setsArgumentAt(delegateIndex)));
+
+		return builder.defineConstructor(Modifier.PUBLIC)
+			.withParameters(insert(parameterTypes, 0, commonDelegateType))
+			.intercept(MethodCall.invoke(superConstructor).withArgument(IntStream.rangeClosed(1, parameterTypes.length).toArray())
+				.andThen(FieldAccessor.ofField(DELEGATE_FIELD_NAME).setsArgumentAt(0)));
+	}
 }
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.proxy.bytebuddy;
+
+/**
+ * @author Sebastien Pelletier
+ *
+ */
+public enum ClassLoadingMode {
+
+	/**
+	 * Generated classes are injected in the target class loader through reflective calls to {@code ClassLoader.defineClass()}.
+	 */
+	INJECTION,
+
+	/**
+	 * Generated classes are defined with {@code MethodHandles.Lookup.defineClass()} in the package and class loader of the partial type,
+	 * the class loader passed to the decorator is ignored, falls back to {@link #INJECTION} before Java 9
+	 * and for partial types in {@code java.*} packages.
+	 */
+	LOOKUP,
+
+	/**
+	 * Generated classes are defined as hidden classes with {@code MethodHandles.Lookup.defineHiddenClass()},
+	 * they are not registered in any class loader so they can be unloaded once they are no longer referenced.
+	 * Generators keep strong references to the classes they generate, generated classes are therefore only unloaded
+	 * after {@link ByteBuddyClassDelegateGenerator#clearCache()} or when a generator created with
+	 * {@link ByteBuddyClassDelegateGenerator#withPrivateCache()} is no longer referenced. Falls back to {@link #LOOKUP} before Java 15.
+	 */
+	HIDDEN
+}
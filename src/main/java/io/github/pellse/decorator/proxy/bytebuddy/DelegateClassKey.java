@@ -0,0 +1,54 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.proxy.bytebuddy;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * @author Sebastien Pelletier
+ *
+ */
+final class DelegateClassKey {
+
+	private final Class<?> generatedType;
+	private final ClassLoader classLoader;
+	private final Object[] generationOptions;
+
+	DelegateClassKey(Class<?> generatedType, ClassLoader classLoader, Object... generationOptions) {
+		this.generatedType = generatedType;
+		this.classLoader = classLoader;
+		this.generationOptions = generationOptions;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof DelegateClassKey))
+			return false;
+
+		DelegateClassKey other = (DelegateClassKey) obj;
+		return generatedType == other.generatedType
+				&& classLoader == other.classLoader
+				&& Arrays.equals(generationOptions, other.generationOptions);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(generatedType, System.identityHashCode(classLoader), Arrays.hashCode(generationOptions));
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.proxy.bytebuddy;
+
+import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
+import static net.bytebuddy.matcher.ElementMatchers.isDeclaredBy;
+import static net.bytebuddy.matcher.ElementMatchers.isDefaultMethod;
+import static net.bytebuddy.matcher.ElementMatchers.isFinal;
+import static net.bytebuddy.matcher.ElementMatchers.isPublic;
+import static net.bytebuddy.matcher.ElementMatchers.isStatic;
+import static net.bytebuddy.matcher.ElementMatchers.isSuperTypeOf;
+import static net.bytebuddy.matcher.ElementMatchers.not;
+
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.matcher.ElementMatcher;
+
+/**
+ * Selects which methods of a partial type are forwarded to the delegate by the generated class.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public enum ForwardingPolicy {
+
+	/**
+	 * Only the abstract methods of the partial type are forwarded.
+	 */
+	ABSTRACT_ONLY {
+		@Override
+		ElementMatcher.Junction<MethodDescription> forwardedMethods(Class<?> commonDelegateType) {
+			return isAbstract();
+		}
+	},
+
+	/**
+	 * Interface default methods the partial type does not override are also forwarded,
+	 * so the delegate's own implementations (e.g. {@code ArrayList.forEach()} or {@code ArrayList.spliterator()}) are used.
+	 */
+	DEFAULT_METHODS {
+		@Override
+		ElementMatcher.Junction<MethodDescription> forwardedMethods(Class<?> commonDelegateType) {
+			return isAbstract().or(isDefaultMethod().and(isDeclaredBy(isSuperTypeOf(commonDelegateType))));
+		}
+	},
+
+	/**
+	 * Every public non-final method inherited from the delegate type and not overridden by the partial type is forwarded,
+	 * including the concrete methods of abstract base classes (e.g. the bulk {@code read(byte[], int, int)} of {@code InputStream}).
+	 */
+	ALL_OVERRIDABLE {
+		@Override
+		ElementMatcher.Junction<MethodDescription> forwardedMethods(Class<?> commonDelegateType) {
+			return isAbstract().or(isPublic()
+					.and(not(isFinal()))
+					.and(not(isStatic()))
+					.and(not(isDeclaredBy(Object.class)))
+					.and(isDeclaredBy(isSuperTypeOf(commonDelegateType))));
+		}
+	};
+
+	abstract ElementMatcher.Junction<MethodDescription> forwardedMethods(Class<?> commonDelegateType);
+}
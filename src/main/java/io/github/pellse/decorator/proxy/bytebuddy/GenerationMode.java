@@ -0,0 +1,36 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.proxy.bytebuddy;
+
+/**
+ * @author Sebastien Pelletier
+ *
+ */
+public enum GenerationMode {
+
+	/**
+	 * The generated class keeps the constructors of the partial type
+	 * and the delegate is set in a private field after instantiation.
+	 */
+	FIELD_INJECTION,
+
+	/**
+	 * The generated class is final and the delegate is assigned to a private final field
+	 * by generated constructors taking the delegate as first parameter,
+	 * or as the parameter already declared by a constructor of the partial type.
+	 */
+	CONSTRUCTOR_INJECTION
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.proxy.bytebuddy;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import io.github.pellse.decorator.util.function.CheckedSupplier;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.NamingStrategy.SuffixingRandom;
+import net.bytebuddy.NamingStrategy.SuffixingRandom.BaseNameResolver.ForGivenType;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+
+/**
+ * Defines generated classes through a {@link Lookup} on the partial type, reflection is used
+ * to access {@code privateLookupIn()}, {@code defineClass()} and {@code defineHiddenClass()} so the library still runs on Java 8.
+ * Classes are always defined in the class loader of the partial type, the class loader passed to {@link #load(ClassLoader, Map)} is ignored.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+class LookupClassLoadingStrategy implements ClassLoadingStrategy<ClassLoader> {
+
+	private static final Optional<Method> PRIVATE_LOOKUP_IN = findMethod(MethodHandles.class, "privateLookupIn", Class.class, Lookup.class);
+	private static final Optional<Method> DEFINE_CLASS = findMethod(Lookup.class, "defineClass", byte[].class);
+	private static final Optional<Object> EMPTY_CLASS_OPTIONS = CheckedSupplier.of(() -> Array.newInstance(Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption"), 0)).toOptional();
+	private static final Optional<Method> DEFINE_HIDDEN_CLASS = EMPTY_CLASS_OPTIONS.flatMap(options -> findMethod(Lookup.class, "defineHiddenClass", byte[].class, boolean.class, options.getClass()));
+
+	private final Class<?> anchorType;
+	private final boolean hidden;
+
+	private LookupClassLoadingStrategy(Class<?> anchorType, boolean hidden) {
+		this.anchorType = anchorType;
+		this.hidden = hidden;
+	}
+
+	static ByteBuddy newByteBuddy(ClassLoadingStrategy<ClassLoader> classLoadingStrategy, Class<?> anchorType) {
+		return classLoadingStrategy instanceof LookupClassLoadingStrategy ?
+				new ByteBuddy().with(new SuffixingRandom("ByteBuddy", new ForGivenType(new TypeDescription.ForLoadedType(anchorType)))) :
+				new ByteBuddy();
+	}
+
+	static ClassLoadingStrategy<ClassLoader> of(ClassLoadingMode classLoadingMode, Class<?> anchorType) {
+		if (classLoadingMode == ClassLoadingMode.INJECTION || !isLookupAvailable() || anchorType.getName().startsWith("java."))
+			return ClassLoadingStrategy.Default.INJECTION;
+
+		return new LookupClassLoadingStrategy(anchorType, classLoadingMode == ClassLoadingMode.HIDDEN && DEFINE_HIDDEN_CLASS.isPresent());
+	}
+
+	static boolean isLookupAvailable() {
+		return PRIVATE_LOOKUP_IN.isPresent() && DEFINE_CLASS.isPresent();
+	}
+
+	@Override
+	public Map<TypeDescription, Class<?>> load(ClassLoader classLoader, Map<TypeDescription, byte[]> types) {
+		return CheckedSupplier.of(() -> {
+			Lookup lookup = (Lookup) PRIVATE_LOOKUP_IN.get().invoke(null, anchorType, MethodHandles.lookup());
+
+			Map<TypeDescription, Class<?>> loadedTypes = new LinkedHashMap<>();
+			for (Map.Entry<TypeDescription, byte[]> entry : types.entrySet())
+				loadedTypes.put(entry.getKey(), hidden && types.size() == 1 ?
+						defineHiddenClass(lookup, entry.getValue()) :
+						(Class<?>) DEFINE_CLASS.get().invoke(lookup, (Object) entry.getValue()));
+
+			return loadedTypes;
+		}).get();
+	}
+
+	private static Class<?> defineHiddenClass(Lookup lookup, byte[] bytes) throws Exception {
+		return ((Lookup) DEFINE_HIDDEN_CLASS.get().invoke(lookup, bytes, false, EMPTY_CLASS_OPTIONS.get())).lookupClass();
+	}
+
+	private static Optional<Method> findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+		return CheckedSupplier.of(() -> type.getMethod(name, parameterTypes)).toOptional();
+	}
+}
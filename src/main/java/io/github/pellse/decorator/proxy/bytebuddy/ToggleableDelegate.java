@@ -0,0 +1,50 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.proxy.bytebuddy;
+
+import java.util.Objects;
+
+import io.github.pellse.decorator.DelegateProvider;
+import io.github.pellse.decorator.LayerToggle;
+
+/**
+ * Base class of generated toggleable delegates, calls are forwarded to the layer
+ * while the toggle is enabled and to the next delegate in the chain otherwise.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public abstract class ToggleableDelegate<T> implements DelegateProvider<T> {
+
+	private final T layer;
+	private final T delegate;
+	private final LayerToggle toggle;
+
+	protected ToggleableDelegate(T layer, T delegate, LayerToggle toggle) {
+		this.layer = Objects.requireNonNull(layer);
+		this.delegate = Objects.requireNonNull(delegate);
+		this.toggle = Objects.requireNonNull(toggle);
+	}
+
+	public final T getTarget() {
+		return toggle.isEnabled() ? layer : delegate;
+	}
+
+	@Override
+	public final T getDelegate() {
+		return delegate;
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.record;
+
+import static io.github.pellse.decorator.record.JournalFormat.OUTCOME_RETURN;
+import static io.github.pellse.decorator.record.JournalFormat.OUTCOME_THROW;
+import static io.github.pellse.decorator.record.JournalFormat.methodTable;
+import static io.github.pellse.decorator.record.JournalFormat.writeHeader;
+import static io.github.pellse.decorator.record.JournalFormat.writeString;
+import static io.github.pellse.decorator.record.JournalFormat.writeValue;
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+import static java.util.Arrays.asList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.pellse.decorator.aop.DelegateInvocationHandler;
+
+/**
+ * Appends every invocation going through this layer (method id, arguments, outcome and timestamp)
+ * to a binary journal in a memory-mapped file, the journal can then be driven against a fresh
+ * decorated chain with an {@link InvocationReplayer}.
+ * <p>
+ * Invocations that do not fit in the remaining journal capacity are forwarded but not recorded,
+ * arguments that are neither primitive wrappers, strings nor instances of the serializable types passed to the constructor
+ * are recorded as {@code null}, arbitrary {@link java.io.Serializable} values are never serialized.
+ * Arguments are encoded on the caller thread before the journal is locked, invocations that cannot be encoded are counted as dropped.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class InvocationRecorder<T> implements DelegateInvocationHandler<T>, AutoCloseable {
+
+	private static final int DEFAULT_CAPACITY = 64 * 1024 * 1024;
+
+	private final Map<Method, Integer> methodIds = new HashMap<>();
+	private final Set<Class<?>> serializableTypes;
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final long startNanos = System.nanoTime();
+
+	private final AtomicLong recordedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private volatile boolean closed;
+
+	public InvocationRecorder(Path journal, Class<T> recordedType) throws IOException {
+		this(journal, recordedType, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param serializableTypes the types whose instances are recorded with Java serialization,
+	 * the replayer must allow the same types
+	 */
+	public InvocationRecorder(Path journal, Class<T> recordedType, int capacity, Class<?>... serializableTypes) throws IOException {
+		this.serializableTypes = new HashSet<>(asList(serializableTypes));
+
+		Method[] methods = methodTable(recordedType);
+		for (int i = 0; i < methods.length; i++)
+			methodIds.put(methods[i], i);
+
+		this.file = new RandomAccessFile(journal.toFile(), "rw");
+		this.file.setLength(0);
+		this.buffer = file.getChannel().map(MapMode.READ_WRITE, 0, capacity);
+
+		writeHeader(buffer, recordedType);
+	}
+
+	@Override
+	public Object invoke(T delegate, Method method, Object[] args) throws Throwable {
+		Integer methodId = methodIds.get(method);
+		if (methodId == null || closed)
+			return invokeAndUnwrap(delegate, method, args);
+
+		long elapsedNanos = System.nanoTime() - startNanos;
+
+		Object result;
+		try {
+			result = invokeAndUnwrap(delegate, method, args);
+		} catch (Throwable e) {
+			record(elapsedNanos, methodId, args, OUTCOME_THROW, e);
+			throw e;
+		}
+
+		record(elapsedNanos, methodId, args, OUTCOME_RETURN, result);
+		return result;
+	}
+
+	/**
+	 * Recording failures are never propagated to the caller, the invocation is counted as dropped instead
+	 */
+	private void record(long elapsedNanos, int methodId, Object[] args, byte outcome, Object outcomeValue) {
+		byte[] record;
+		try {
+			record = encode(elapsedNanos, methodId, args, outcome, outcomeValue);
+		} catch (Exception e) {
+			droppedCount.incrementAndGet();
+			return;
+		}
+
+		synchronized (buffer) {
+			if (closed || buffer.remaining() < record.length + Integer.BYTES * 2) {
+				droppedCount.incrementAndGet();
+				return;
+			}
+
+			buffer.putInt(record.length);
+			buffer.put(record);
+		}
+		recordedCount.incrementAndGet();
+	}
+
+	private byte[] encode(long elapsedNanos, int methodId, Object[] args, byte outcome, Object outcomeValue) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		int argCount = args != null ? args.length : 0;
+
+		out.writeLong(elapsedNanos);
+		out.writeShort(methodId);
+		out.writeByte(argCount);
+		for (int i = 0; i < argCount; i++)
+			writeValue(out, args[i], serializableTypes);
+
+		out.writeByte(outcome);
+		if (outcome == OUTCOME_RETURN) {
+			writeValue(out, outcomeValue, serializableTypes);
+		} else {
+			Throwable exception = (Throwable) outcomeValue;
+			writeString(out, exception.getClass().getName());
+			writeString(out, String.valueOf(exception.getMessage()));
+		}
+
+		return bytes.toByteArray();
+	}
+
+	public long getRecordedCount() {
+		return recordedCount.get();
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (buffer) {
+			if (closed)
+				return;
+
+			closed = true;
+			buffer.force();
+		}
+		file.close();
+	}
+}
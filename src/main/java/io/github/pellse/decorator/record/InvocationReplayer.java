@@ -0,0 +1,122 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.record;
+
+import static io.github.pellse.decorator.record.JournalFormat.OUTCOME_THROW;
+import static io.github.pellse.decorator.record.JournalFormat.methodTable;
+import static io.github.pellse.decorator.record.JournalFormat.readHeader;
+import static io.github.pellse.decorator.record.JournalFormat.readValue;
+import static java.util.Arrays.asList;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a target object with the invocations recorded by an {@link InvocationRecorder}.
+ * Serialized values are only read for the types allowed by the replayer, a journal containing any other type fails the replay.
+ *
+ * <pre>
+ * ReplayResult result = new InvocationReplayer&lt;&gt;(journal, List.class)
+ *	.replay(Decorator.of(new ArrayList&lt;&gt;(), List.class).with(SafeList.class).make(), ReplayMode.MAXIMUM_SPEED);
+ * </pre>
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class InvocationReplayer<T> {
+
+	private final Path journal;
+	private final Class<T> recordedType;
+	private final Method[] methods;
+	private final Set<Class<?>> serializableTypes;
+
+	public InvocationReplayer(Path journal, Class<T> recordedType, Class<?>... serializableTypes) {
+		this.journal = journal;
+		this.recordedType = recordedType;
+		this.methods = methodTable(recordedType);
+		this.serializableTypes = new HashSet<>(asList(serializableTypes));
+	}
+
+	public ReplayResult replay(T target, ReplayMode replayMode) throws IOException {
+		try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			readHeader(buffer, recordedType);
+
+			long invocationCount = 0;
+			long mismatchCount = 0;
+			long startNanos = System.nanoTime();
+
+			while (buffer.remaining() >= Integer.BYTES) {
+				int length = buffer.getInt();
+				if (length == 0)
+					break;
+
+				byte[] record = new byte[length];
+				buffer.get(record);
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+				long elapsedNanos = in.readLong();
+				Method method = methods[in.readUnsignedShort()];
+				Object[] args = new Object[in.readUnsignedByte()];
+				for (int i = 0; i < args.length; i++)
+					args[i] = readValue(in, serializableTypes);
+
+				boolean recordedThrow = in.readByte() == OUTCOME_THROW;
+
+				if (replayMode == ReplayMode.ORIGINAL_SPEED)
+					awaitUntil(startNanos + elapsedNanos);
+
+				if (invoke(target, method, args) == recordedThrow)
+					mismatchCount++;
+
+				invocationCount++;
+			}
+
+			return new ReplayResult(invocationCount, mismatchCount, System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * @return {@code true} if the invocation returned normally
+	 */
+	private static boolean invoke(Object target, Method method, Object[] args) {
+		try {
+			method.invoke(target, args);
+			return true;
+		} catch (InvocationTargetException | IllegalArgumentException e) {
+			return false;
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void awaitUntil(long deadlineNanos) {
+		long remaining;
+		while ((remaining = deadlineNanos - System.nanoTime()) > 0)
+			LockSupport.parkNanos(remaining);
+	}
+}
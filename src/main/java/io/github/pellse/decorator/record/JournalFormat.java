@@ -0,0 +1,254 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.record;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.stream;
+import static java.util.Comparator.comparing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * Binary layout shared by {@link InvocationRecorder} and {@link InvocationReplayer}.
+ * <p>
+ * The journal starts with a header (magic number, version and recorded interface name) followed by
+ * length prefixed invocation records, a zero length marks the end of the journal. Each record holds
+ * the time elapsed since the start of the recording, the method id, the arguments and the outcome of the call.
+ * Methods are identified by their index in the sorted public method table of the recorded interface.
+ * Java serialization is only used for the types explicitly allowed by the recorder and the replayer,
+ * allowing a type also allows its subtypes and the serializable superclasses needed to read them.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+final class JournalFormat {
+
+	static final int MAGIC = 0x44454352;
+	static final int VERSION = 2;
+
+	static final byte OUTCOME_RETURN = 0;
+	static final byte OUTCOME_THROW = 1;
+
+	private static final byte NULL = 0;
+	private static final byte BOOLEAN = 1;
+	private static final byte BYTE = 2;
+	private static final byte SHORT = 3;
+	private static final byte CHAR = 4;
+	private static final byte INT = 5;
+	private static final byte LONG = 6;
+	private static final byte FLOAT = 7;
+	private static final byte DOUBLE = 8;
+	private static final byte STRING = 9;
+	private static final byte SERIALIZED = 10;
+	private static final byte UNSUPPORTED = 11;
+
+	private JournalFormat() {
+	}
+
+	static Method[] methodTable(Class<?> recordedType) {
+		return stream(recordedType.getMethods())
+				.filter(method -> !Modifier.isStatic(method.getModifiers()))
+				.sorted(comparing(Method::toGenericString))
+				.toArray(Method[]::new);
+	}
+
+	static void writeHeader(ByteBuffer buffer, Class<?> recordedType) {
+		byte[] typeName = recordedType.getName().getBytes(UTF_8);
+
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(typeName.length);
+		buffer.put(typeName);
+	}
+
+	static void readHeader(ByteBuffer buffer, Class<?> recordedType) throws IOException {
+		if (buffer.remaining() < 12 || buffer.getInt() != MAGIC)
+			throw new IOException("Not an invocation journal");
+
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported journal version " + version);
+
+		byte[] typeName = new byte[buffer.getInt()];
+		buffer.get(typeName);
+
+		if (!recordedType.getName().equals(new String(typeName, UTF_8)))
+			throw new IOException("Journal was recorded for " + new String(typeName, UTF_8) + ", not " + recordedType.getName());
+	}
+
+	static void writeValue(DataOutput out, Object value, Set<Class<?>> serializableTypes) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		} else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		} else if (value instanceof Character) {
+			out.writeByte(CHAR);
+			out.writeChar((Character) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Serializable && serializableTypes.stream().anyMatch(type -> type.isInstance(value))) {
+			writeSerialized(out, value);
+		} else {
+			out.writeByte(UNSUPPORTED);
+			writeString(out, value.getClass().getName());
+		}
+	}
+
+	static Object readValue(DataInput in, Set<Class<?>> serializableTypes) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case BOOLEAN:
+			return in.readBoolean();
+		case BYTE:
+			return in.readByte();
+		case SHORT:
+			return in.readShort();
+		case CHAR:
+			return in.readChar();
+		case INT:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case FLOAT:
+			return in.readFloat();
+		case DOUBLE:
+			return in.readDouble();
+		case STRING:
+			return readString(in);
+		case SERIALIZED:
+			return readSerialized(in, serializableTypes);
+		case UNSUPPORTED:
+			readString(in);
+			return null;
+		default:
+			throw new IOException("Unknown value tag " + tag);
+		}
+	}
+
+	/**
+	 * Strings are written as length prefixed UTF-8 bytes, {@link DataOutput#writeUTF(String)} is limited to 64KB
+	 */
+	static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static void writeSerialized(DataOutput out, Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+			objectOut.writeObject(value);
+		} catch (NotSerializableException e) {
+			out.writeByte(UNSUPPORTED);
+			writeString(out, value.getClass().getName());
+			return;
+		}
+
+		out.writeByte(SERIALIZED);
+		out.writeInt(bytes.size());
+		out.write(bytes.toByteArray());
+	}
+
+	private static Object readSerialized(DataInput in, Set<Class<?>> serializableTypes) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+
+		try (ObjectInputStream objectIn = new AllowedTypesObjectInputStream(new ByteArrayInputStream(bytes), serializableTypes)) {
+			return objectIn.readObject();
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	static boolean isAllowed(Class<?> type, Set<Class<?>> serializableTypes) {
+		if (type.isPrimitive())
+			return true;
+
+		if (type.isArray())
+			return isAllowed(type.getComponentType(), serializableTypes);
+
+		return serializableTypes.stream().anyMatch(allowedType -> allowedType.isAssignableFrom(type) || type.isAssignableFrom(allowedType));
+	}
+
+	/**
+	 * Rejects every class that is not allowed before it is instantiated, journals are untrusted input
+	 */
+	private static final class AllowedTypesObjectInputStream extends ObjectInputStream {
+
+		private final Set<Class<?>> serializableTypes;
+
+		AllowedTypesObjectInputStream(ByteArrayInputStream in, Set<Class<?>> serializableTypes) throws IOException {
+			super(in);
+			this.serializableTypes = serializableTypes;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+			Class<?> type = super.resolveClass(descriptor);
+			if (!isAllowed(type, serializableTypes))
+				throw new InvalidClassException(descriptor.getName(), "Type not allowed in invocation journals");
+
+			return type;
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+			throw new InvalidClassException("Proxy classes are not allowed in invocation journals");
+		}
+	}
+}
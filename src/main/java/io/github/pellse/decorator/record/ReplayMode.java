@@ -0,0 +1,31 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.record;
+
+/**
+ * @author Sebastien Pelletier
+ *
+ */
+public enum ReplayMode {
+	/**
+	 * Preserves the delays observed between the recorded invocations
+	 */
+	ORIGINAL_SPEED,
+	/**
+	 * Replays the invocations back to back
+	 */
+	MAXIMUM_SPEED
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.record;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Sebastien Pelletier
+ *
+ */
+public class ReplayResult {
+
+	private final long invocationCount;
+	private final long mismatchCount;
+	private final long elapsedNanos;
+
+	ReplayResult(long invocationCount, long mismatchCount, long elapsedNanos) {
+		this.invocationCount = invocationCount;
+		this.mismatchCount = mismatchCount;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public long getInvocationCount() {
+		return invocationCount;
+	}
+
+	/**
+	 * @return The number of replayed invocations that returned when the recorded one threw, or the other way around
+	 */
+	public long getMismatchCount() {
+		return mismatchCount;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public double getThroughput() {
+		return elapsedNanos > 0 ? invocationCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+	}
+
+	@Override
+	public String toString() {
+		return "ReplayResult [invocationCount=" + invocationCount + ", mismatchCount=" + mismatchCount + ", elapsedNanos=" + elapsedNanos + "]";
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.trace;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.util.List;
+
+/**
+ * Timings of one sampled invocation, with one {@link LayerTiming} per traced layer ordered from the outermost layer.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public final class TraceRecord {
+
+	private final String methodName;
+	private final long timestampMillis;
+	private final List<LayerTiming> layerTimings;
+
+	TraceRecord(String methodName, long timestampMillis, List<LayerTiming> layerTimings) {
+		this.methodName = methodName;
+		this.timestampMillis = timestampMillis;
+		this.layerTimings = unmodifiableList(layerTimings);
+	}
+
+	public String getMethodName() {
+		return methodName;
+	}
+
+	public long getTimestampMillis() {
+		return timestampMillis;
+	}
+
+	public List<LayerTiming> getLayerTimings() {
+		return layerTimings;
+	}
+
+	@Override
+	public String toString() {
+		return "TraceRecord [methodName=" + methodName + ", timestampMillis=" + timestampMillis + ", layerTimings=" + layerTimings + "]";
+	}
+
+	public static final class LayerTiming {
+
+		private final String layerName;
+		private final String methodName;
+		private final int depth;
+		private final long totalNanos;
+		private final long selfNanos;
+
+		LayerTiming(String layerName, String methodName, int depth, long totalNanos, long selfNanos) {
+			this.layerName = layerName;
+			this.methodName = methodName;
+			this.depth = depth;
+			this.totalNanos = totalNanos;
+			this.selfNanos = selfNanos;
+		}
+
+		public String getLayerName() {
+			return layerName;
+		}
+
+		public String getMethodName() {
+			return methodName;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getSelfNanos() {
+			return selfNanos;
+		}
+
+		public long getDownstreamNanos() {
+			return totalNanos - selfNanos;
+		}
+
+		@Override
+		public String toString() {
+			return layerName + "." + methodName + " [depth=" + depth + ", totalNanos=" + totalNanos + ", selfNanos=" + selfNanos + "]";
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.trace;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.pellse.decorator.aop.DelegateInvocationHandler;
+import io.github.pellse.decorator.trace.TraceRecord.LayerTiming;
+import io.github.pellse.decorator.util.concurrent.RingBuffer;
+
+/**
+ * Samples a fraction of the invocations going through the layers returned by {@link #layer(String)}
+ * and records the time spent in each of them, a traced layer should be added right after the layer it measures:
+ *
+ * <pre>
+ * List&lt;String&gt; list = Decorator.of(new ArrayList&lt;&gt;(), List.class)
+ *	.with(tracer.layer("ArrayList"))
+ *	.with(SafeList.class)
+ *	.with(tracer.layer("SafeList"))
+ *	.make();
+ * </pre>
+ *
+ * The sampling decision is taken by the outermost traced layer. Traced layers are handler layers, unsampled invocations
+ * therefore still pay the reflective dispatch of a handler layer on top of a thread local counter update.
+ * That dispatch overhead is calibrated once per JVM and subtracted from the self time a layer spends calling the next traced layer.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class Tracer {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private final int sampleInterval;
+	private final RingBuffer<TraceRecord> records;
+	private final ThreadLocal<TraceContext> contexts = ThreadLocal.withInitial(TraceContext::new);
+
+	public Tracer(double sampleRate) {
+		this(sampleRate, DEFAULT_CAPACITY);
+	}
+
+	public Tracer(double sampleRate, int capacity) {
+		if (sampleRate < 0 || sampleRate > 1)
+			throw new IllegalArgumentException("sampleRate must be between 0 and 1, was " + sampleRate);
+
+		this.sampleInterval = sampleRate == 0 ? 0 : (int) Math.round(1 / sampleRate);
+		this.records = new RingBuffer<>(capacity);
+	}
+
+	public <T> DelegateInvocationHandler<T> layer(String layerName) {
+		return (delegate, method, args) -> invoke(layerName, delegate, method, args);
+	}
+
+	public List<TraceRecord> dump() {
+		return records.snapshot();
+	}
+
+	public long getSampledCount() {
+		return records.getTotalCount();
+	}
+
+	private Object invoke(String layerName, Object delegate, Method method, Object[] args) throws Throwable {
+		TraceContext context = contexts.get();
+		if (context.depth == 0)
+			context.sampled = context.sample(sampleInterval);
+
+		if (!context.sampled) {
+			context.depth++;
+			try {
+				return invokeAndUnwrap(delegate, method, args);
+			} finally {
+				context.depth--;
+			}
+		}
+
+		int depth = context.depth++;
+		int frameIndex = context.enter(depth);
+		long start = System.nanoTime();
+		try {
+			return invokeAndUnwrap(delegate, method, args);
+		} finally {
+			context.depth--;
+			context.exit(frameIndex, depth, layerName, method.getName(), System.nanoTime() - start, DispatchOverhead.NANOS);
+
+			if (depth == 0)
+				records.add(context.complete(method.getName()));
+		}
+	}
+
+	static long getDispatchOverheadNanos() {
+		return DispatchOverhead.NANOS;
+	}
+
+	/**
+	 * Measures the cost of calling through a handler layer, i.e. a {@link Proxy} forwarding to a {@link Method},
+	 * the best average over several batches is kept to filter out interruptions
+	 */
+	private static final class DispatchOverhead {
+
+		private static final int BATCHES = 20;
+		private static final int CALLS_PER_BATCH = 10_000;
+
+		static final long NANOS = calibrate();
+
+		private static long calibrate() {
+			Runnable target = () -> {};
+			Runnable layer = (Runnable) Proxy.newProxyInstance(Tracer.class.getClassLoader(),
+					new Class<?>[] {Runnable.class},
+					(proxy, method, args) -> invokeAndUnwrap(target, method, args));
+
+			long bestNanos = Long.MAX_VALUE;
+			for (int batch = 0; batch < BATCHES; batch++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < CALLS_PER_BATCH; i++)
+					layer.run();
+
+				bestNanos = Math.min(bestNanos, (System.nanoTime() - start) / CALLS_PER_BATCH);
+			}
+			return bestNanos;
+		}
+	}
+
+	private static final class TraceContext {
+
+		private int counter;
+		private int depth;
+		private boolean sampled;
+		private long timestampMillis;
+
+		private long[] downstreamNanos = new long[8];
+		private int[] downstreamCalls = new int[8];
+		private final List<LayerTiming> layerTimings = new ArrayList<>();
+
+		boolean sample(int sampleInterval) {
+			if (sampleInterval == 0 || ++counter < sampleInterval)
+				return false;
+
+			counter = 0;
+			timestampMillis = System.currentTimeMillis();
+			return true;
+		}
+
+		int enter(int depth) {
+			if (depth == downstreamNanos.length) {
+				downstreamNanos = Arrays.copyOf(downstreamNanos, depth * 2);
+				downstreamCalls = Arrays.copyOf(downstreamCalls, depth * 2);
+			}
+
+			downstreamNanos[depth] = 0;
+			downstreamCalls[depth] = 0;
+			layerTimings.add(null);
+			return layerTimings.size() - 1;
+		}
+
+		void exit(int frameIndex, int depth, String layerName, String methodName, long totalNanos, long dispatchNanos) {
+			if (depth > 0) {
+				downstreamNanos[depth - 1] += totalNanos;
+				downstreamCalls[depth - 1]++;
+			}
+
+			long selfNanos = Math.max(0, totalNanos - downstreamNanos[depth] - downstreamCalls[depth] * dispatchNanos);
+			layerTimings.set(frameIndex, new LayerTiming(layerName, methodName, depth, totalNanos, selfNanos));
+		}
+
+		TraceRecord complete(String methodName) {
+			TraceRecord traceRecord = new TraceRecord(methodName, timestampMillis, new ArrayList<>(layerTimings));
+			layerTimings.clear();
+			return traceRecord;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.util.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for short background tasks such as prefetching: a virtual thread per task executor when
+ * running on a JVM that supports virtual threads, a shared cached pool of daemon threads otherwise.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public final class BackgroundExecutors {
+
+	private static final ExecutorService DEFAULT_EXECUTOR = createDefaultExecutor();
+
+	private BackgroundExecutors() {
+	}
+
+	public static ExecutorService defaultExecutor() {
+		return DEFAULT_EXECUTOR;
+	}
+
+	private static ExecutorService createDefaultExecutor() {
+		try {
+			Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(daemonThreadFactory("decorator-background-"));
+		}
+	}
+
+	private static ThreadFactory daemonThreadFactory(String namePrefix) {
+		AtomicInteger threadCount = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free bounded buffer keeping the most recent elements, older elements are overwritten once the buffer is full.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class RingBuffer<E> {
+
+	private final AtomicReferenceArray<E> slots;
+	private final AtomicLong sequence = new AtomicLong();
+	private final int mask;
+
+	public RingBuffer(int capacity) {
+		if (capacity < 1 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Capacity must be a power of 2, was " + capacity);
+
+		this.slots = new AtomicReferenceArray<>(capacity);
+		this.mask = capacity - 1;
+	}
+
+	public void add(E element) {
+		slots.set((int) (sequence.getAndIncrement() & mask), element);
+	}
+
+	public List<E> snapshot() {
+		long end = sequence.get();
+		long start = Math.max(0, end - slots.length());
+
+		List<E> elements = new ArrayList<>((int) (end - start));
+		for (long i = start; i < end; i++) {
+			E element = slots.get((int) (i & mask));
+			if (element != null)
+				elements.add(element);
+		}
+		return elements;
+	}
+
+	public long getTotalCount() {
+		return sequence.get();
+	}
+
+	public int getCapacity() {
+		return slots.length();
+	}
+}
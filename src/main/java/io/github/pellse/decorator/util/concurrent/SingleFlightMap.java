@@ -0,0 +1,76 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.util.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+import org.jctools.maps.NonBlockingHashMap;
+
+/**
+ * Concurrent cache whose mapping function runs at most once per key: the first thread to miss on a key
+ * computes the value while the other threads missing on the same key wait for that computation.
+ * A failed computation is not cached, the next lookup for the key retries it.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class SingleFlightMap<K, V> {
+
+	private final Map<K, FutureTask<V>> map = new NonBlockingHashMap<>();
+
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		FutureTask<V> future = map.get(key);
+		if (future == null) {
+			FutureTask<V> newFuture = new FutureTask<>(() -> mappingFunction.apply(key));
+			future = map.putIfAbsent(key, newFuture);
+			if (future == null) {
+				future = newFuture;
+				newFuture.run();
+			}
+		}
+		return await(key, future);
+	}
+
+	private V await(K key, FutureTask<V> future) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					map.remove(key, future);
+					throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public void clear() {
+		map.clear();
+	}
+}
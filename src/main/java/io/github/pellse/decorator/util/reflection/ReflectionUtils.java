@@ -26,6 +26,7 @@ import static org.reflections.ReflectionUtils.withTypeAssignableTo;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -154,6 +155,14 @@ public class ReflectionUtils {
 		}).get();
 	}
 
+	public static Object invokeAndUnwrap(Object obj, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(obj, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
 	public static boolean isAbstract(Class<?> clazz) {
 		return clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers());
 	}
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.github.pellse.decorator.DecoratorAllocationTest.InnerDelegateList;
+import io.github.pellse.decorator.builder.DecoratorBuilder;
+import io.github.pellse.decorator.collection.BoundedList;
+import io.github.pellse.decorator.collection.DirtyList;
+import io.github.pellse.decorator.collection.ForwarderInvocationHandler;
+
+/**
+ * Guards against allocation regressions by measuring the bytes allocated by the current thread,
+ * pass-through calls must not allocate at all, handler calls and decorated instances must stay within their budget.
+ * Budgets are in bytes, the largest value measured on 64 bit HotSpot JVMs 8 and 11 plus about 15% of slack,
+ * each case is a separate test so one regression cannot hide behind the slack of another.
+ * The reflective handler call allocates more on Java 8, whose escape analysis does not remove the boxed arguments,
+ * so it is the only case with a budget depending on the JVM version.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class DecoratorAllocationBudgetTest {
+
+	private static final int WARMUP_ITERATIONS = 20_000;
+	private static final int ITERATIONS = 100_000;
+	private static final int INSTANCES = 10_000;
+
+	private static final boolean JAVA_8 = System.getProperty("java.specification.version").startsWith("1.");
+
+	private static final long HANDLER_CALL_BUDGET = JAVA_8 ? 96 : 56;
+
+	private static final long GENERATED_INSTANCE_BUDGET = 1_408;
+	private static final long PARTIAL_INTERFACE_INSTANCE_BUDGET = 1_320;
+	private static final long ABSTRACT_CLASS_INSTANCE_BUDGET = 1_264;
+	private static final long HANDLER_INSTANCE_BUDGET = 1_624;
+	private static final long BUILDER_CHAIN_INSTANCE_BUDGET = 2_712;
+
+	private static com.sun.management.ThreadMXBean threadMXBean;
+
+	@BeforeClass
+	public static void setUpBeforeClass() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+		threadMXBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testGeneratedPassThroughCallsDoNotAllocate() {
+
+		List<Object> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(DirtyList.class)
+				.make();
+
+		assertThat(bytesPerCall(list), equalTo(0L));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testPartialInterfaceCallsDoNotAllocate() {
+
+		List<Object> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(InnerDelegateList.class)
+				.make();
+
+		assertThat(bytesPerCall(list), equalTo(0L));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testAbstractClassCallsDoNotAllocate() {
+
+		List<Object> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(BoundedList.class, 1_000)
+				.make();
+
+		assertThat(bytesPerCall(list), equalTo(0L));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testHandlerCallsStayWithinBudget() {
+
+		List<Object> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(new ForwarderInvocationHandler<>())
+				.make();
+
+		long bytes = bytesPerCall(list);
+		assertThat("Allocation per handler call = " + bytes + " bytes", bytes, lessThanOrEqualTo(HANDLER_CALL_BUDGET));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testGeneratedInstancesStayWithinBudget() {
+
+		List<Object> delegate = new ArrayList<>();
+		assertBytesPerInstance("generated", () -> Decorator.of(delegate, List.class).with(DirtyList.class).make(),
+				GENERATED_INSTANCE_BUDGET);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testPartialInterfaceInstancesStayWithinBudget() {
+
+		List<Object> delegate = new ArrayList<>();
+		assertBytesPerInstance("partial interface", () -> Decorator.of(delegate, List.class).with(InnerDelegateList.class).make(),
+				PARTIAL_INTERFACE_INSTANCE_BUDGET);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testAbstractClassInstancesStayWithinBudget() {
+
+		List<Object> delegate = new ArrayList<>();
+		assertBytesPerInstance("abstract class", () -> Decorator.of(delegate, List.class).with(BoundedList.class, 1_000).make(),
+				ABSTRACT_CLASS_INSTANCE_BUDGET);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testHandlerInstancesStayWithinBudget() {
+
+		List<Object> delegate = new ArrayList<>();
+		ForwarderInvocationHandler<List> handler = new ForwarderInvocationHandler<>();
+
+		assertBytesPerInstance("handler", () -> Decorator.of(delegate, List.class).with(handler).make(),
+				HANDLER_INSTANCE_BUDGET);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testBuilderChainInstancesStayWithinBudget() {
+
+		List<Object> delegate = new ArrayList<>();
+		assertBytesPerInstance("builder chain", () -> DecoratorBuilder.of(delegate, List.class)
+					.with(BoundedList.class)
+						.params(1_000)
+						.paramTypes(int.class)
+					.with(DirtyList.class)
+					.make(),
+				BUILDER_CHAIN_INSTANCE_BUDGET);
+	}
+
+	private static long bytesPerCall(List<Object> list) {
+		Runnable call = () -> {
+			list.add("aaa");
+			list.remove("aaa");
+		};
+
+		return (allocatedBytes(call, WARMUP_ITERATIONS, ITERATIONS) - allocatedBytes(() -> {}, WARMUP_ITERATIONS, ITERATIONS)) / ITERATIONS;
+	}
+
+	private static void assertBytesPerInstance(String name, Supplier<?> factory, long budget) {
+		long bytes = bytesPerInstance(factory);
+		assertThat("Allocation per " + name + " instance = " + bytes + " bytes", bytes, lessThanOrEqualTo(budget));
+	}
+
+	private static long bytesPerInstance(Supplier<?> factory) {
+		Object[] instances = new Object[INSTANCES];
+		Runnable create = new Runnable() {
+
+			private int index;
+
+			@Override
+			public void run() {
+				instances[index++ % INSTANCES] = factory.get();
+			}
+		};
+
+		return allocatedBytes(create, INSTANCES, INSTANCES) / INSTANCES;
+	}
+
+	private static long allocatedBytes(Runnable operation, int warmupIterations, int iterations) {
+		for (int i = 0; i < warmupIterations; i++)
+			operation.run();
+
+		long threadId = Thread.currentThread().getId();
+		long start = threadMXBean.getThreadAllocatedBytes(threadId);
+
+		for (int i = 0; i < iterations; i++)
+			operation.run();
+
+		return threadMXBean.getThreadAllocatedBytes(threadId) - start;
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.collection.BoundedList;
+import io.github.pellse.decorator.collection.DirtyList;
+import io.github.pellse.decorator.collection.SafeList;
+import io.github.pellse.decorator.proxy.bytebuddy.ByteBuddyClassDelegateGenerator;
+import io.github.pellse.decorator.proxy.bytebuddy.ClassLoadingMode;
+import io.github.pellse.decorator.util.function.CheckedSupplier;
+
+public class DecoratorRegistryTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testRegistryOwnsGeneratedClasses() {
+
+		try (DecoratorRegistry registry = DecoratorRegistry.create()) {
+			DirtyList<String> dirtyList = Decorator.of(new ArrayList<>(), List.class, registry)
+					.with(SafeList.class)
+					.with(BoundedList.class, 50)
+					.with(DirtyList.class)
+					.make();
+
+			dirtyList.add("aaa");
+
+			assertThat(dirtyList.isDirty(), is(true));
+			assertThat(dirtyList.getClass().getClassLoader(), sameInstance(registry.getClassLoader()));
+			assertThat(registry.getGeneratedClassCount(), equalTo(3));
+			assertThat(registry.getCacheEntryCount(), greaterThan(registry.getGeneratedClassCount()));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testRegistriesAreIsolated() {
+
+		try (DecoratorRegistry registry1 = DecoratorRegistry.create(); DecoratorRegistry registry2 = DecoratorRegistry.create()) {
+			List<String> list1 = Decorator.of(new ArrayList<>(), List.class, registry1).with(SafeList.class).make();
+			List<String> list2 = Decorator.of(new ArrayList<>(), List.class, registry2).with(SafeList.class).make();
+
+			assertThat(list1.getClass() == list2.getClass(), is(false));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test(expected = IllegalStateException.class)
+	public void testClosedRegistryReleasesCaches() {
+
+		DecoratorRegistry registry = DecoratorRegistry.create();
+		Decorator.of(new ArrayList<>(), List.class, registry).with(DirtyList.class).make();
+
+		registry.close();
+
+		assertThat(registry.getCacheEntryCount(), equalTo(0));
+		Decorator.of(new ArrayList<>(), List.class, registry);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testConcurrentFirstUseGeneratesClassOnce() throws Exception {
+
+		int nbThreads = 16;
+		ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+
+		try (DecoratorRegistry registry = DecoratorRegistry.create()) {
+			CountDownLatch start = new CountDownLatch(1);
+			Set<Class<?>> generatedClasses = ConcurrentHashMap.newKeySet();
+
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < nbThreads; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					generatedClasses.add(Decorator.of(new ArrayList<>(), List.class, registry).with(DirtyList.class).make().getClass());
+					return null;
+				}));
+			}
+
+			start.countDown();
+			for (Future<?> future : futures)
+				future.get();
+
+			assertThat(generatedClasses.size(), equalTo(1));
+			assertThat(registry.getGeneratedClassCount(), equalTo(1));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	public void testDefaultRegistryDoesNotPinGeneratedClasses() throws Exception {
+
+		ByteBuddyClassDelegateGenerator<List> generator = new ByteBuddyClassDelegateGenerator<List>()
+				.withClassLoadingMode(isHiddenClassSupported() ? ClassLoadingMode.HIDDEN : ClassLoadingMode.INJECTION)
+				.withPrivateCache();
+
+		WeakReference<Class<?>> generatedClass = generateDirtyListClass(generator);
+
+		generator.clearCache();
+
+		for (int i = 0; i < 50 && generatedClass.get() != null; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+
+		assertThat(generatedClass.get(), is(nullValue()));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static WeakReference<Class<?>> generateDirtyListClass(ByteBuddyClassDelegateGenerator<List> generator) {
+		ClassLoader classLoader = new ClassLoader(Decorator.class.getClassLoader()) {};
+
+		DirtyList<String> dirtyList = Decorator.of(new ArrayList<>(), List.class, generator, classLoader)
+				.with(DirtyList.class)
+				.make();
+
+		dirtyList.add("aaa");
+		assertThat(dirtyList.isDirty(), is(true));
+
+		return new WeakReference<>(dirtyList.getClass());
+	}
+
+	private static boolean isHiddenClassSupported() {
+		return CheckedSupplier.of(() -> Class.class.getMethod("isHidden")).toOptional().isPresent();
+	}
+}
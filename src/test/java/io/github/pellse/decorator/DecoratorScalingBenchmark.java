@@ -0,0 +1,226 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.findDelegateInstantiationInfo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.github.pellse.decorator.DecoratorAllocationTest.InnerDelegateList;
+import io.github.pellse.decorator.collection.DirtyList;
+import io.github.pellse.decorator.collection.ForwarderInvocationHandler;
+import io.github.pellse.decorator.collection.SafeList;
+import io.github.pellse.decorator.proxy.bytebuddy.ByteBuddyClassDelegateGenerator;
+
+/**
+ * Runs 1 to N threads (the number of available processors by default, {@code -Dbenchmark.maxThreads} to override)
+ * against a shared decorated instance, against the creation of many decorated instances, against a generator shared
+ * by all threads generating a bounded set of partial types and against the reflection based instantiation lookups,
+ * and reports for each thread count the throughput, the scaling relative to a single thread, the time spent blocked
+ * on monitors and the time spent waiting, which includes parking on locks and futures.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class DecoratorScalingBenchmark {
+
+	private static final long WARMUP_MILLIS = 500;
+	private static final long MEASUREMENT_MILLIS = 2_000;
+
+	private static final List<Class<?>> PARTIAL_TYPES = Arrays.asList(DirtyList.class, SafeList.class, InnerDelegateList.class);
+
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	@BeforeClass
+	public static void setUpBeforeClass() {
+		if (threadMXBean.isThreadContentionMonitoringSupported())
+			threadMXBean.setThreadContentionMonitoringEnabled(true);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSharedDecoratedInstance() throws Exception {
+
+		List<Object> list = new ArrayList<>(Arrays.asList("aaa", "bbb"));
+		List<Object> decoratedList = Decorator.of(list, List.class)
+				.with(new ForwarderInvocationHandler<>())
+				.with(DirtyList.class)
+				.make();
+
+		benchmark("Shared decorated instance calls", () -> () -> {
+			decoratedList.get(1);
+			decoratedList.size();
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testManyDecoratedInstances() throws Exception {
+
+		benchmark("Decorated instance creation", () -> () -> Decorator.of(new ArrayList<>(), List.class)
+				.with(SafeList.class)
+				.with(DirtyList.class)
+				.make());
+	}
+
+	/**
+	 * Each thread count starts from a fresh generator shared by all threads, the threads first contend on the generation
+	 * of the partial types and then on the lookups of the generated classes in the shared cache
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testConcurrentFirstTimeGeneration() throws Exception {
+
+		benchmarkRuns("Shared generator over partial types", () -> {
+			ByteBuddyClassDelegateGenerator<List> generator = new ByteBuddyClassDelegateGenerator<List>().withPrivateCache();
+
+			return () -> {
+				int[] count = {0};
+
+				return () -> Decorator.of(new ArrayList<>(), List.class, generator)
+						.with((Class<List>) PARTIAL_TYPES.get(count[0]++ % PARTIAL_TYPES.size()))
+						.make();
+			};
+		});
+	}
+
+	@Test
+	public void testReflectionLookups() throws Exception {
+
+		benchmark("Reflection based instantiation lookups", () -> () -> {
+			for (Class<?> partialType : PARTIAL_TYPES)
+				findDelegateInstantiationInfo(partialType, List.class, new Class<?>[0]);
+		});
+	}
+
+	private static void benchmark(String name, Supplier<Runnable> operationFactory) throws Exception {
+		benchmarkRuns(name, () -> operationFactory);
+	}
+
+	/**
+	 * {@code runFactory} is called once per thread count and the operation factory it returns once per thread,
+	 * so state created by the run factory is shared by all the threads of that run
+	 */
+	private static void benchmarkRuns(String name, Supplier<Supplier<Runnable>> runFactory) throws Exception {
+		int maxThreads = Integer.getInteger("benchmark.maxThreads", Runtime.getRuntime().availableProcessors());
+
+		System.out.println(name + ":");
+		System.out.println(String.format("%8s %16s %10s %16s %16s", "Threads", "Ops/s", "Scaling", "Blocked ms/s", "Waited ms/s"));
+
+		double singleThreadThroughput = 0;
+		for (int nbThreads = 1; nbThreads <= maxThreads; nbThreads = nbThreads == maxThreads ? maxThreads + 1 : Math.min(nbThreads * 2, maxThreads)) {
+			Result result = run(nbThreads, runFactory.get());
+			if (nbThreads == 1)
+				singleThreadThroughput = result.throughput;
+
+			System.out.println(String.format("%8d %16.0f %10.2f %16.1f %16.1f",
+					nbThreads,
+					result.throughput,
+					result.throughput / (singleThreadThroughput * nbThreads),
+					result.blockedMillisPerSecond,
+					result.waitedMillisPerSecond));
+		}
+	}
+
+	private static Result run(int nbThreads, Supplier<Runnable> operationFactory) throws Exception {
+		LongAdder operations = new LongAdder();
+		LongAdder blockedMillis = new LongAdder();
+		LongAdder waitedMillis = new LongAdder();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		CyclicBarrier barrier = new CyclicBarrier(nbThreads);
+
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < nbThreads; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					Runnable operation = operationFactory.get();
+					barrier.await();
+
+					long warmupEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARMUP_MILLIS);
+					while (System.nanoTime() < warmupEnd)
+						operation.run();
+
+					barrier.await();
+					ThreadInfo start = threadInfo();
+
+					long measurementEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MEASUREMENT_MILLIS);
+					long count = 0;
+					while (System.nanoTime() < measurementEnd) {
+						operation.run();
+						count++;
+					}
+
+					ThreadInfo end = threadInfo();
+					operations.add(count);
+					blockedMillis.add(elapsed(start, end, ThreadInfo::getBlockedTime));
+					waitedMillis.add(elapsed(start, end, ThreadInfo::getWaitedTime));
+				} catch (Throwable e) {
+					if (!failure.compareAndSet(null, e))
+						failure.get().addSuppressed(e);
+
+					barrier.reset();
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		if (failure.get() != null)
+			throw new IllegalStateException("Benchmark worker failed", failure.get());
+
+		double seconds = MEASUREMENT_MILLIS / 1_000.0;
+		return new Result(operations.sum() / seconds, blockedMillis.sum() / seconds, waitedMillis.sum() / seconds);
+	}
+
+	private static ThreadInfo threadInfo() {
+		return threadMXBean.getThreadInfo(Thread.currentThread().getId());
+	}
+
+	private static long elapsed(ThreadInfo start, ThreadInfo end, ToLongFunction<ThreadInfo> time) {
+		return start != null && end != null ? Math.max(time.applyAsLong(end) - Math.max(time.applyAsLong(start), 0), 0) : 0;
+	}
+
+	private static class Result {
+
+		private final double throughput;
+		private final double blockedMillisPerSecond;
+		private final double waitedMillisPerSecond;
+
+		Result(double throughput, double blockedMillisPerSecond, double waitedMillisPerSecond) {
+			this.throughput = throughput;
+			this.blockedMillisPerSecond = blockedMillisPerSecond;
+			this.waitedMillisPerSecond = waitedMillisPerSecond;
+		}
+	}
+}
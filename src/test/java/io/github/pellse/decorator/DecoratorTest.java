@@ -16,13 +16,17 @@
 package io.github.pellse.decorator;
 
 import static java.lang.Runtime.getRuntime;
+import static java.util.Arrays.asList;
 import static java.util.Collections.synchronizedList;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isA;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
@@ -34,8 +38,21 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
 import javax.inject.Inject;
 
@@ -46,6 +63,7 @@ import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import io.github.pellse.decorator.aop.DelegateInvocationHandler;
 import io.github.pellse.decorator.collection.BoundedList;
 import io.github.pellse.decorator.collection.BoundedList2;
 import io.github.pellse.decorator.collection.DirtyList;
@@ -54,8 +72,14 @@ import io.github.pellse.decorator.collection.ForwarderInvocationHandler;
 import io.github.pellse.decorator.collection.IDirtyList;
 import io.github.pellse.decorator.collection.InitializedBoundedList;
 import io.github.pellse.decorator.collection.SafeList;
+import io.github.pellse.decorator.proxy.DelegateGenerator;
+import io.github.pellse.decorator.proxy.bytebuddy.ByteBuddyClassDelegateGenerator;
+import io.github.pellse.decorator.proxy.bytebuddy.ClassLoadingMode;
+import io.github.pellse.decorator.proxy.bytebuddy.ForwardingPolicy;
+import io.github.pellse.decorator.proxy.bytebuddy.GenerationMode;
 import io.github.pellse.decorator.util.DelegateList;
 import io.github.pellse.decorator.util.EmptyClass;
+import io.github.pellse.decorator.util.function.CheckedSupplier;
 
 public class DecoratorTest {
 
@@ -387,6 +411,285 @@ public class DecoratorTest {
 		assertThat(inputList, sameInstance(outputList));
 	}
 
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testDecoratorWithConstructorInjection() throws Exception {
+
+		ByteBuddyClassDelegateGenerator<List> generator = new ByteBuddyClassDelegateGenerator<List>()
+				.withGenerationMode(GenerationMode.CONSTRUCTOR_INJECTION);
+
+		List<String> list = new ArrayList<>();
+		DirtyList<String> dirtyList = Decorator.of(list, List.class, generator)
+				.with(SafeList.class)
+				.with(ListStaticSubclass.class)
+				.with(BoundedList.class, 50)
+				.with(InitializedBoundedList.class)
+				.with(DirtyList.class)
+				.make();
+
+		dirtyList.add("aaa");
+
+		assertThat(dirtyList.isDirty(), is(true));
+		assertThat(list, hasItem("aaa"));
+		assertThat(Modifier.isFinal(dirtyList.getClass().getModifiers()), is(true));
+		assertThat(Modifier.isFinal(dirtyList.getClass().getDeclaredField("delegate").getModifiers()), is(true));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testDecoratorWithDefaultMethodForwarding() {
+
+		ByteBuddyClassDelegateGenerator<List> generator = new ByteBuddyClassDelegateGenerator<List>()
+				.withForwardingPolicy(ForwardingPolicy.DEFAULT_METHODS);
+
+		List<String> list = Decorator.of(new ArrayList<>(asList("aaa", "bbb")), List.class, generator)
+				.with(SafeList.class)
+				.make();
+
+		List<String> abstractOnlyList = Decorator.of(new ArrayList<>(asList("aaa", "bbb")), List.class)
+				.with(SafeList.class)
+				.make();
+
+		assertThat(list.spliterator().getClass(), equalTo(new ArrayList<>().spliterator().getClass()));
+		assertThat(abstractOnlyList.spliterator().getClass() == new ArrayList<>().spliterator().getClass(), is(false));
+
+		list.add("ccc");
+		list.removeIf(s -> s.startsWith("a"));
+		assertThat(list, contains("bbb", "ccc"));
+	}
+
+	@Test
+	public void testDecoratorWithConcreteMethodForwarding() throws Exception {
+
+		ByteBuddyClassDelegateGenerator<InputStream> generator = new ByteBuddyClassDelegateGenerator<InputStream>()
+				.withForwardingPolicy(ForwardingPolicy.ALL_OVERRIDABLE);
+
+		CountingInputStream countingInputStream = new CountingInputStream(new byte[1000]);
+		DataInputStream in = Decorator.of(countingInputStream, InputStream.class, generator)
+				.with(ForwardingInputStream.class)
+				.with(delegate -> new DataInputStream(delegate))
+				.make();
+
+		in.readFully(new byte[1000]);
+		assertThat(countingInputStream.singleByteReadCount, equalTo(0));
+
+		countingInputStream = new CountingInputStream(new byte[1000]);
+		in = Decorator.of(countingInputStream, InputStream.class)
+				.with(ForwardingInputStream.class)
+				.with(delegate -> new DataInputStream(delegate))
+				.make();
+
+		in.readFully(new byte[1000]);
+		assertThat(countingInputStream.singleByteReadCount, equalTo(1000));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testMarkerInterfacesArePropagated() {
+
+		List<String> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(SafeList.class)
+				.with(new ForwarderInvocationHandler<>())
+				.with(DirtyList.class)
+				.make();
+
+		List<String> linkedList = Decorator.of(new LinkedList<>(), List.class)
+				.with(SafeList.class)
+				.make();
+
+		List<String> unmarkedList = Decorator.of(new ArrayList<>(), List.class, new ByteBuddyClassDelegateGenerator<List>().withMarkerInterfaces())
+				.with(SafeList.class)
+				.make();
+
+		assertThat(list, instanceOf(RandomAccess.class));
+		assertThat(list, not(instanceOf(Serializable.class)));
+		assertThat(linkedList, not(instanceOf(RandomAccess.class)));
+		assertThat(linkedList, instanceOf(Cloneable.class));
+		assertThat(unmarkedList, not(instanceOf(RandomAccess.class)));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testSerializableMarkerInterfaceRoundTrip() throws Exception {
+
+		ByteBuddyClassDelegateGenerator<List> generator = new ByteBuddyClassDelegateGenerator<List>()
+				.withMarkerInterfaces(Serializable.class);
+
+		List<String> list = Decorator.of(new ArrayList<>(), List.class, generator)
+				.with(SafeList.class)
+				.make();
+
+		List<String> handlerList = Decorator.of(new ArrayList<>(), List.class, generator)
+				.with(new ForwarderInvocationHandler<>())
+				.make();
+
+		list.add("aaa");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(list);
+		}
+
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			List<String> deserializedList = (List<String>) in.readObject();
+
+			assertThat(deserializedList.getClass(), equalTo(list.getClass()));
+			assertThat(deserializedList, contains("aaa"));
+		}
+
+		assertThat(asList(handlerList.getClass().getInterfaces()), not(hasItem(Serializable.class)));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testDecoratorWithDelegateSpecialization() {
+
+		ByteBuddyClassDelegateGenerator<List> generator = new ByteBuddyClassDelegateGenerator<List>()
+				.withPrivateCache()
+				.withMarkerInterfaces()
+				.withSpecialization(2);
+
+		Class<?> arrayListClass = Decorator.of(new ArrayList<>(), List.class, generator).with(SafeList.class).make().getClass();
+		Class<?> linkedListClass = Decorator.of(new LinkedList<>(), List.class, generator).with(SafeList.class).make().getClass();
+		Class<?> vectorClass = Decorator.of(new Vector<>(), List.class, generator).with(SafeList.class).make().getClass();
+		Class<?> copyOnWriteListClass = Decorator.of(new CopyOnWriteArrayList<>(), List.class, generator).with(SafeList.class).make().getClass();
+
+		assertThat(Decorator.of(new ArrayList<>(), List.class, generator).with(SafeList.class).make().getClass(), equalTo(arrayListClass));
+		assertThat(arrayListClass == linkedListClass, is(false));
+		assertThat(vectorClass == arrayListClass || vectorClass == linkedListClass, is(false));
+		assertThat(copyOnWriteListClass, equalTo(vectorClass));
+		assertThat(generator.getCachedClassCount(), equalTo(3));
+	}
+
+	@Test
+	public void testDecoratorWithLookupClassLoading() {
+		testDecoratorWithClassLoadingMode(ClassLoadingMode.LOOKUP);
+	}
+
+	@Test
+	public void testDecoratorWithHiddenClassLoading() throws Exception {
+		DirtyList<String> dirtyList = testDecoratorWithClassLoadingMode(ClassLoadingMode.HIDDEN);
+
+		Optional<Method> isHidden = CheckedSupplier.of(() -> Class.class.getMethod("isHidden")).toOptional();
+		if (isHidden.isPresent())
+			assertThat(isHidden.get().invoke(dirtyList.getClass()), is(true));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private DirtyList<String> testDecoratorWithClassLoadingMode(ClassLoadingMode classLoadingMode) {
+
+		ByteBuddyClassDelegateGenerator<List> generator = new ByteBuddyClassDelegateGenerator<List>()
+				.withClassLoadingMode(classLoadingMode);
+
+		DirtyList<String> dirtyList = Decorator.of(new ArrayList<>(), List.class, generator)
+				.with(SafeList.class)
+				.with(BoundedList.class, 50)
+				.with(DirtyList.class)
+				.make();
+
+		dirtyList.add("aaa");
+
+		assertThat(dirtyList.isDirty(), is(true));
+		assertThat(dirtyList, hasItem("aaa"));
+		assertThat(dirtyList.getClass().getClassLoader(), sameInstance(DirtyList.class.getClassLoader()));
+
+		return dirtyList;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testLazyRootObject() {
+
+		AtomicInteger nbInstancesCreated = new AtomicInteger();
+
+		DirtyList<String> dirtyList = Decorator.ofLazy(() -> {
+					nbInstancesCreated.incrementAndGet();
+					return new ArrayList<>();
+				}, List.class)
+				.with(SafeList.class)
+				.with(DirtyList.class)
+				.make();
+
+		assertThat(nbInstancesCreated.get(), equalTo(0));
+
+		dirtyList.add("aaa");
+		dirtyList.add("bbb");
+
+		assertThat(dirtyList.get(1), equalTo("bbb"));
+		assertThat(dirtyList.isDirty(), is(true));
+		assertThat(nbInstancesCreated.get(), equalTo(1));
+	}
+
+	@Test
+	public void testLazyRootObjectOfClass() throws IOException {
+
+		AtomicInteger nbInstancesCreated = new AtomicInteger();
+
+		InputStream in = Decorator.ofLazy(() -> {
+					nbInstancesCreated.incrementAndGet();
+					return new ByteArrayInputStream(new byte[] {9, 99});
+				}, InputStream.class)
+				.make();
+
+		assertThat(nbInstancesCreated.get(), equalTo(0));
+
+		assertThat(in.read(), equalTo(9));
+		assertThat(in.read(), equalTo(99));
+		assertThat(nbInstancesCreated.get(), equalTo(1));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testDefaultGeneratorImplementations() {
+
+		ByteBuddyClassDelegateGenerator<List> byteBuddyGenerator = new ByteBuddyClassDelegateGenerator<>();
+		AtomicInteger nbInstancesCreated = new AtomicInteger();
+
+		DelegateGenerator<List> generator = new DelegateGenerator<List>() {
+
+			@Override
+			public <D extends List, T extends List> D generateDelegate(T rootObject, Class<D> generatedType, Class<List> commonDelegateType,
+					BiFunction<Class<D>, T, D> instanceCreator, ClassLoader classLoader) {
+				return byteBuddyGenerator.generateDelegate(rootObject, generatedType, commonDelegateType, instanceCreator, classLoader);
+			}
+
+			@Override
+			public <D extends List, T extends List> D generateDelegate(T rootObject, DelegateInvocationHandler<List> handler, Class<D> generatedType,
+					Class<List> commonDelegateType, ClassLoader classLoader) {
+				return byteBuddyGenerator.generateDelegate(rootObject, handler, generatedType, commonDelegateType, classLoader);
+			}
+		};
+
+		DirtyList<String> dirtyList = Decorator.ofLazy(() -> {
+					nbInstancesCreated.incrementAndGet();
+					return new ArrayList<>();
+				}, List.class, generator)
+				.with(DirtyList.class)
+				.make();
+
+		assertThat(nbInstancesCreated.get(), equalTo(0));
+
+		dirtyList.add("aaa");
+
+		assertThat(dirtyList.get(0), equalTo("aaa"));
+		assertThat(nbInstancesCreated.get(), equalTo(1));
+
+		LayerToggle toggle = new LayerToggle(true);
+		List<String> toggledList = Decorator.of(new ArrayList<>(), List.class, generator)
+				.with(delegate -> Collections.unmodifiableList(delegate), toggle)
+				.make();
+
+		try {
+			toggledList.add("aaa");
+			throw new AssertionError("Unmodifiable list layer should have rejected the element");
+		} catch (UnsupportedOperationException e) {
+		}
+
+		toggle.disable();
+		toggledList.add("aaa");
+		assertThat(toggledList, contains("aaa"));
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testDecoratorWithDelegateFromStaticInnerClass() {
@@ -462,4 +765,22 @@ public class DecoratorTest {
 			return delegate.read() + 1;
 		}
 	}
+
+	public static abstract class ForwardingInputStream extends InputStream {
+	}
+
+	public static class CountingInputStream extends ByteArrayInputStream {
+
+		int singleByteReadCount;
+
+		public CountingInputStream(byte[] buf) {
+			super(buf);
+		}
+
+		@Override
+		public synchronized int read() {
+			singleByteReadCount++;
+			return super.read();
+		}
+	}
 }
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator;
+
+import static java.util.stream.Collectors.toList;
+import static org.apache.commons.lang3.ClassUtils.getAllInterfaces;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.proxy.bytebuddy.ByteBuddyClassDelegateGenerator;
+import io.github.pellse.decorator.util.function.CheckedSupplier;
+
+/**
+ * Measures in a fresh JVM per decorated type the time to the first decorated instance, the cost of generating
+ * a delegate class once ByteBuddy is warm and the metaspace used per generated class, from single method interfaces
+ * up to {@link ResultSet} and deep abstract class hierarchies.
+ *
+ * @author Sebastien Pelletier
+ *
+ */
+public class DelegateGenerationBenchmark {
+
+	private static final int GENERATED_CLASSES = 50;
+
+	private static final List<Class<?>> DECORATED_TYPES = Arrays.asList(
+			Callable.class,
+			Collection.class,
+			List.class,
+			NavigableMap.class,
+			Connection.class,
+			ResultSet.class,
+			DeepResultSet.class);
+
+	@Test
+	public void testColdStartAndGenerationCost() throws Exception {
+
+		System.out.println(String.format("%-20s %8s %18s %18s %22s", "Type", "Methods", "First instance ms", "Generation us", "Metaspace bytes/class"));
+
+		for (Class<?> type : DECORATED_TYPES)
+			System.out.println(runInFreshJvm(type));
+	}
+
+	private static String runInFreshJvm(Class<?> type) throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+		Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), DelegateGenerationBenchmark.class.getName(), type.getName())
+				.redirectErrorStream(true)
+				.start();
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			List<String> output = reader.lines().collect(toList());
+
+			if (!process.waitFor(5, TimeUnit.MINUTES) || process.exitValue() != 0)
+				throw new IllegalStateException("Benchmark of " + type.getName() + " failed:\n" + String.join("\n", output));
+
+			return output.get(output.size() - 1);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) throws Exception {
+		Class<Object> type = (Class<Object>) Class.forName(args[0]);
+		Class<Object> commonDelegateType = (Class<Object>) (type.isInterface() ? type : getAllInterfaces(type).get(0));
+
+		Object delegate = Proxy.newProxyInstance(commonDelegateType.getClassLoader(),
+				new Class<?>[] {commonDelegateType},
+				(proxy, method, methodArgs) -> null);
+
+		long start = System.nanoTime();
+		Decorator.of(delegate, commonDelegateType).with(type).make();
+		long firstInstanceNanos = System.nanoTime() - start;
+
+		ByteBuddyClassDelegateGenerator<Object> generator = new ByteBuddyClassDelegateGenerator<>().withPrivateCache();
+		long metaspaceBefore = metaspaceUsed();
+
+		start = System.nanoTime();
+		for (int i = 0; i < GENERATED_CLASSES; i++) {
+			generator.clearCache();
+			generator.generateDelegate(delegate, type, commonDelegateType,
+					(generatedType, delegateTarget) -> CheckedSupplier.of(() -> generatedType.getDeclaredConstructor().newInstance()).get(),
+					DelegateGenerationBenchmark.class.getClassLoader());
+		}
+		long generationNanos = (System.nanoTime() - start) / GENERATED_CLASSES;
+		long metaspacePerClass = (metaspaceUsed() - metaspaceBefore) / GENERATED_CLASSES;
+
+		System.out.println(String.format("%-20s %8d %18.1f %18.1f %22d",
+				type.getSimpleName(),
+				Arrays.stream(type.getMethods()).filter(method -> Modifier.isAbstract(method.getModifiers())).count(),
+				firstInstanceNanos / 1_000_000.0,
+				generationNanos / 1_000.0,
+				metaspacePerClass));
+	}
+
+	private static long metaspaceUsed() {
+		return ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(pool -> pool.getName().contains("Metaspace") || pool.getName().contains("Class Space"))
+				.filter(pool -> !pool.getName().contains("Compressed"))
+				.mapToLong(pool -> pool.getUsage().getUsed())
+				.sum();
+	}
+
+	public static abstract class ResultSetLayer implements ResultSet {
+
+		protected abstract ResultSet getDelegate();
+
+		@Override
+		public boolean next() throws SQLException {
+			return getDelegate().next();
+		}
+	}
+
+	public static abstract class CursorResultSet extends ResultSetLayer {
+
+		@Override
+		public boolean previous() throws SQLException {
+			return getDelegate().previous();
+		}
+	}
+
+	public static abstract class ClosingResultSet extends CursorResultSet {
+
+		@Override
+		public void close() throws SQLException {
+			getDelegate().close();
+		}
+	}
+
+	public static abstract class DeepResultSet extends ClosingResultSet {
+
+		@Override
+		public boolean wasNull() throws SQLException {
+			return getDelegate().wasNull();
+		}
+	}
+}
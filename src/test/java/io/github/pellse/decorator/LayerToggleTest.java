@@ -0,0 +1,125 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator;
+
+import static io.github.pellse.decorator.util.reflection.ReflectionUtils.invokeAndUnwrap;
+import static java.util.Collections.unmodifiableList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.collection.SafeList;
+
+public class LayerToggleTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testToggledHandlerLayer() {
+
+		AtomicInteger invocationCount = new AtomicInteger();
+		LayerToggle toggle = new LayerToggle(false);
+
+		List<String> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(SafeList.class)
+				.with((delegate, method, args) -> {
+					invocationCount.incrementAndGet();
+					return invokeAndUnwrap(delegate, method, args);
+				}, toggle)
+				.make();
+
+		list.add("aaa");
+		assertThat(invocationCount.get(), equalTo(0));
+
+		toggle.enable();
+		list.add("bbb");
+		assertThat(invocationCount.get(), equalTo(1));
+
+		toggle.disable();
+		list.add("ccc");
+		assertThat(invocationCount.get(), equalTo(1));
+		assertThat(list, contains("aaa", "bbb", "ccc"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testToggledFactoryLayer() {
+
+		LayerToggle toggle = new LayerToggle(true);
+
+		List<String> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(delegate -> unmodifiableList(delegate), toggle)
+				.make();
+
+		try {
+			list.add("aaa");
+			throw new AssertionError("Unmodifiable list layer should have rejected the element");
+		} catch (UnsupportedOperationException e) {
+		}
+
+		toggle.disable();
+		list.add("aaa");
+		assertThat(list, contains("aaa"));
+	}
+
+	@Test
+	public void testToggledFactoryLayerOfClass() throws IOException {
+
+		LayerToggle toggle = new LayerToggle(true);
+
+		InputStream in = Decorator.of(new ByteArrayInputStream(new byte[] {1, 2}), InputStream.class)
+				.with(delegate -> new FilterInputStream(delegate) {
+					@Override
+					public int read() throws IOException {
+						return super.read() * 10;
+					}
+				}, toggle)
+				.make();
+
+		assertThat(in.read(), equalTo(10));
+
+		toggle.disable();
+		assertThat(in.read(), equalTo(2));
+	}
+
+	@Test
+	public void testNamedToggles() {
+
+		LayerToggle globalToggle = LayerToggle.named("metrics");
+		LayerToggle listToggle = LayerToggle.named("metrics", List.class);
+
+		listToggle.enable();
+		assertThat(globalToggle.isEnabled(), is(false));
+		assertThat(LayerToggle.named("metrics", List.class).isEnabled(), is(true));
+
+		LayerToggle.setEnabled("metrics", true);
+		assertThat(globalToggle.isEnabled(), is(true));
+
+		LayerToggle.setEnabled("metrics", false);
+		assertThat(globalToggle.isEnabled(), is(false));
+		assertThat(listToggle.isEnabled(), is(false));
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.agent;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.github.pellse.decorator.collection.SafeList;
+import net.bytebuddy.agent.ByteBuddyAgent;
+
+public class DecoratorAgentTest {
+
+	@BeforeClass
+	public static void setUpBeforeClass() {
+		DecoratorAgent.install(ByteBuddyAgent.install());
+		DecoratorAgent.weave("io.github.pellse.decorator.agent.WovenList", SafeList.class);
+		DecoratorAgent.weave("io.github.pellse.decorator.agent.DecoratorAgentTest$CountingList", SafeList.class);
+	}
+
+	public static class CountingList<E> extends ArrayList<E> {
+
+		private static final long serialVersionUID = 1L;
+
+		private int addCount;
+
+		@Override
+		public boolean add(E e) {
+			addCount++;
+			return super.add(e);
+		}
+	}
+
+	public interface LambdaList<E> extends List<E> {
+
+		List<E> getDelegate();
+
+		@Override
+		default boolean add(E e) {
+			Supplier<E> element = () -> e;
+			return getDelegate().add(element.get());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testPartialInterfaceIsWovenIntoRootClass() {
+
+		List<Date> list = new WovenList<>();
+		assertThat(list, instanceOf(SafeList.class));
+		assertThat(((SafeList<Date>) list).getDelegate(), sameInstance(list));
+
+		Date date = new Date();
+		list.add(date);
+		list.add(0, new Date(0));
+
+		assertThat(list.size(), equalTo(2));
+		assertThat(list.get(1), equalTo(date));
+		assertThat(list.get(1), not(sameInstance(date)));
+
+		Date otherDate = new Date(1);
+		list.addAll(asList(otherDate));
+		assertThat(list.get(2), equalTo(otherDate));
+		assertThat(list.get(2), not(sameInstance(otherDate)));
+		assertThat(DecoratorAgent.getWeavingErrors().keySet(), empty());
+	}
+
+	@Test
+	public void testMethodDeclaredByNestedRootClassIsWoven() {
+
+		CountingList<Date> list = new CountingList<>();
+		assertThat(list, instanceOf(SafeList.class));
+
+		Date date = new Date();
+		list.add(date);
+
+		assertThat(list.addCount, equalTo(1));
+		assertThat(list.get(0), equalTo(date));
+		assertThat(list.get(0), not(sameInstance(date)));
+		assertThat(DecoratorAgent.getWeavingErrors().keySet(), empty());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testLoadedRootClassCannotBeWoven() {
+		DecoratorAgent.weave(ArrayList.class.getName(), SafeList.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLambdaExpressionsCannotBeWoven() {
+		DecoratorAgent.weave("io.github.pellse.decorator.agent.NotWovenList", LambdaList.class);
+	}
+
+	@Test
+	public void testNonOverriddenMethodsAreUnchanged() {
+
+		List<String> list = new WovenList<>();
+		list.add("aaa");
+		list.add("bbb");
+		list.remove("aaa");
+
+		assertThat(list, contains("bbb"));
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.audit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.pellse.decorator.Decorator;
+
+public class AuditInvocationHandlerTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testAuditedInvocationsAreWrittenToLogFile() throws Exception {
+
+		Path logFile = temporaryFolder.newFile("audit.log").toPath();
+
+		try (AuditInvocationHandler<List> auditHandler = AuditInvocationHandler.builder(logFile, List.class)
+				.durability(Durability.BATCH)
+				.arguments("add", 1)
+				.build()) {
+
+			List<String> list = Decorator.of(new ArrayList<>(), List.class)
+					.with(auditHandler)
+					.make();
+
+			list.add(0, "aaa");
+			list.set(0, "bbb");
+			list.clear();
+
+			auditHandler.flush();
+
+			List<String> lines = Files.readAllLines(logFile);
+			assertThat(lines.size(), equalTo(3));
+			assertThat(lines.get(0), endsWith(" add(aaa)"));
+			assertThat(lines.get(1), endsWith(" set(0, bbb)"));
+			assertThat(lines.get(2), endsWith(" clear()"));
+			assertThat(auditHandler.getDroppedCount(), equalTo(0L));
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testPendingRecordsAreWrittenOnClose() throws Exception {
+
+		Path logFile = temporaryFolder.newFile("audit.log").toPath();
+
+		try (AuditInvocationHandler<List> auditHandler = AuditInvocationHandler.builder(logFile, List.class).build()) {
+			List<String> list = Decorator.of(new ArrayList<>(), List.class)
+					.with(auditHandler)
+					.make();
+
+			for (int i = 0; i < 1000; i++)
+				list.add("aaa");
+		}
+
+		List<String> lines = Files.readAllLines(logFile);
+		assertThat(lines.size(), equalTo(1000));
+		assertThat(lines.stream().map(line -> line.substring(line.indexOf(' ') + 1)).distinct().collect(Collectors.toList()), contains("add(aaa)"));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testFormattingFailuresAndLongLinesDoNotStopWriter() throws Exception {
+
+		Path logFile = temporaryFolder.newFile("audit.log").toPath();
+		String longString = String.join("", Collections.nCopies(100_000, "a"));
+
+		try (AuditInvocationHandler<List> auditHandler = AuditInvocationHandler.builder(logFile, List.class).build()) {
+			List<Object> list = Decorator.of(new ArrayList<>(), List.class)
+					.with(auditHandler)
+					.make();
+
+			list.add(new Object() {
+				@Override
+				public String toString() {
+					throw new ConcurrentModificationException();
+				}
+			});
+			list.add(longString);
+			list.add("bbb");
+
+			auditHandler.flush();
+
+			List<String> lines = Files.readAllLines(logFile);
+			assertThat(lines.size(), equalTo(2));
+			assertThat(lines.get(0), endsWith(" add(" + longString + ")"));
+			assertThat(lines.get(1), endsWith(" add(bbb)"));
+			assertThat(auditHandler.getFailedCount(), equalTo(1L));
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testArgumentsMutatedAfterInvocationAreAuditedAsPassed() throws Exception {
+
+		Path logFile = temporaryFolder.newFile("audit.log").toPath();
+
+		try (AuditInvocationHandler<List> auditHandler = AuditInvocationHandler.builder(logFile, List.class).build()) {
+			List<Object> list = Decorator.of(new ArrayList<>(), List.class)
+					.with(auditHandler)
+					.make();
+
+			StringBuilder argument = new StringBuilder("aaa");
+			list.add(argument);
+			argument.append("bbb");
+
+			auditHandler.flush();
+
+			List<String> lines = Files.readAllLines(logFile);
+			assertThat(lines.size(), equalTo(1));
+			assertThat(lines.get(0), endsWith(" add(aaa)"));
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.collection;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.Decorator;
+import io.github.pellse.decorator.collection.ChangeJournal.Cursor;
+import io.github.pellse.decorator.collection.ChangeJournal.Operation;
+
+public class JournalingListTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testReplicaIsSyncedFromDeltas() {
+
+		JournalingList<String> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(JournalingList.class)
+				.make();
+
+		List<String> replica = new ArrayList<>();
+		Cursor<String> cursor = list.getJournal().cursor();
+
+		list.addAll(Arrays.asList("ccc", "aaa", "bbb", "ddd"));
+		list.set(3, "eee");
+		list.sort(null);
+		list.removeIf(s -> s.startsWith("b"));
+
+		assertThat(cursor.applyTo(replica), equalTo(10));
+		assertThat(replica, equalTo(list));
+
+		Iterator<String> iterator = list.iterator();
+		iterator.next();
+		iterator.remove();
+		list.subList(0, 2).clear();
+		list.add(0, "fff");
+
+		assertThat(cursor.applyTo(replica), equalTo(4));
+		assertThat(replica, contains("fff"));
+		assertThat(replica, equalTo(list));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testIteratorsAndSubListsFailFast() {
+
+		JournalingList<String> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(JournalingList.class)
+				.make();
+
+		list.addAll(Arrays.asList("aaa", "bbb", "ccc"));
+
+		Iterator<String> iterator = list.iterator();
+		iterator.next();
+		list.add("ddd");
+
+		try {
+			iterator.next();
+			throw new AssertionError("Iterating after a structural modification should have failed");
+		} catch (ConcurrentModificationException e) {
+		}
+
+		List<String> subList = list.subList(0, 2);
+		list.remove(0);
+
+		try {
+			subList.size();
+			throw new AssertionError("Using a sub list after a structural modification should have failed");
+		} catch (ConcurrentModificationException e) {
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testConcurrentWritersAreJournaledInOrder() throws Exception {
+
+		JournalingList<Integer> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(JournalingList.class)
+				.make();
+
+		List<Integer> replica = new ArrayList<>();
+		Cursor<Integer> cursor = list.getJournal().cursor();
+
+		Thread[] writers = new Thread[4];
+		for (int i = 0; i < writers.length; i++) {
+			int writer = i;
+			writers[i] = new Thread(() -> {
+				for (int j = 0; j < 1000; j++)
+					list.add(0, writer * 1000 + j);
+			});
+			writers[i].start();
+		}
+
+		for (Thread writer : writers)
+			writer.join();
+
+		cursor.applyTo(replica);
+		assertThat(replica, equalTo(list));
+	}
+
+	@Test
+	public void testCursorReadsEncodedChanges() {
+
+		ChangeJournal<String> journal = new ChangeJournal<>(1);
+		journal.recordAdd(0, "aaa");
+		journal.recordRemove(0);
+		journal.recordClear();
+
+		Cursor<String> cursor = journal.cursor(0);
+
+		assertThat(cursor.next(), equalTo(true));
+		assertThat(cursor.getOperation(), equalTo(Operation.ADD));
+		assertThat(cursor.getIndex(), equalTo(0));
+		assertThat(cursor.getElement(), equalTo("aaa"));
+
+		assertThat(cursor.next(), equalTo(true));
+		assertThat(cursor.getOperation(), equalTo(Operation.REMOVE));
+
+		journal.discardBefore(cursor.getPosition());
+		assertThat(journal.getStartPosition(), equalTo(2L));
+
+		assertThat(cursor.next(), equalTo(true));
+		assertThat(cursor.getOperation(), equalTo(Operation.CLEAR));
+		assertThat(cursor.next(), equalTo(false));
+
+		try {
+			journal.cursor(0).next();
+			throw new AssertionError("Reading discarded changes should have failed");
+		} catch (IllegalStateException e) {
+		}
+	}
+}
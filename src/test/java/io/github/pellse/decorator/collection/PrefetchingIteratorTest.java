@@ -0,0 +1,139 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.collection;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.Decorator;
+import io.github.pellse.decorator.aop.ReturnValueInvocationHandler;
+
+public class PrefetchingIteratorTest {
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testIteratorReturnValueIsPrefetched() {
+
+		Set<Thread> fetchingThreads = ConcurrentHashMap.newKeySet();
+
+		List<Integer> source = IntStream.range(0, 25).boxed().collect(toList());
+		List<Integer> pagedList = new ArrayList<Integer>(source) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Iterator<Integer> iterator() {
+				Iterator<Integer> iterator = super.iterator();
+				return new Iterator<Integer>() {
+
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public Integer next() {
+						fetchingThreads.add(Thread.currentThread());
+						return iterator.next();
+					}
+				};
+			}
+		};
+
+		ReturnValueInvocationHandler<List> prefetchingHandler = ReturnValueInvocationHandler.<List>builder()
+				.decorate(Iterator.class, iterator -> new PrefetchingIterator<>(iterator, 10))
+				.build();
+
+		List<Integer> list = Decorator.of(pagedList, List.class)
+				.with(prefetchingHandler)
+				.make();
+
+		Iterator<Integer> iterator = list.iterator();
+		assertThat(iterator.getClass(), equalTo(PrefetchingIterator.class));
+
+		List<Integer> result = new ArrayList<>();
+		iterator.forEachRemaining(result::add);
+
+		assertThat(result, equalTo(source));
+		assertThat(fetchingThreads.contains(Thread.currentThread()), equalTo(false));
+		assertThat(list.size(), equalTo(25));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testReturnTypeRuleOnlyMatchesDeclaredReturnType() {
+
+		ReturnValueInvocationHandler<List> prefetchingHandler = ReturnValueInvocationHandler.<List>builder()
+				.decorate(Iterator.class, iterator -> new PrefetchingIterator<>(iterator, 2))
+				.build();
+
+		List<Integer> list = Decorator.of(new ArrayList<>(asList(1, 2, 3)), List.class)
+				.with(prefetchingHandler)
+				.make();
+
+		ListIterator<Integer> listIterator = list.listIterator();
+		listIterator.next();
+		listIterator.remove();
+
+		assertThat(list, equalTo(asList(2, 3)));
+		assertThat(list.iterator().getClass(), equalTo(PrefetchingIterator.class));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testMethodNameRuleTakesPrecedence() {
+
+		List<String> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(ReturnValueInvocationHandler.<List>builder()
+						.decorate(List.class, subList -> new ArrayList<>())
+						.decorate("subList", subList -> new ArrayList<>((List<String>) subList).subList(0, 1))
+						.build())
+				.make();
+
+		list.add("aaa");
+		list.add("bbb");
+		list.add("ccc");
+
+		assertThat(list.subList(0, 3).size(), equalTo(1));
+	}
+
+	@Test
+	public void testPrefetchingStream() {
+
+		Set<Thread> fetchingThreads = ConcurrentHashMap.newKeySet();
+
+		try (Stream<Integer> stream = PrefetchingIterator.prefetch(IntStream.range(0, 100).boxed()
+				.peek(i -> fetchingThreads.add(Thread.currentThread())), 7)) {
+
+			assertThat(stream.collect(toList()), equalTo(IntStream.range(0, 100).boxed().collect(toList())));
+		}
+
+		assertThat(fetchingThreads.contains(Thread.currentThread()), equalTo(false));
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.Decorator;
+
+public class CoalescingInvocationHandlerTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testConcurrentIdenticalCallsShareOneExecution() throws Exception {
+
+		CountDownLatch release = new CountDownLatch(1);
+		CountingLookupService lookupService = new CountingLookupService(release, new CompletableFuture<>());
+
+		LookupService coalescingLookupService = Decorator.of(lookupService, LookupService.class)
+				.with(new CoalescingInvocationHandler<>())
+				.make();
+
+		int nbThreads = 10;
+		ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < nbThreads; i++)
+				results.add(executor.submit(() -> coalescingLookupService.lookup("key")));
+
+			Thread.sleep(200);
+			release.countDown();
+
+			for (Future<String> result : results)
+				assertThat(result.get(), equalTo("value-key"));
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(lookupService.lookupCount.get(), equalTo(1));
+		assertThat(coalescingLookupService.lookup("other"), equalTo("value-other"));
+		assertThat(lookupService.lookupCount.get(), equalTo(2));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testConcurrentAsyncCallsShareOneFuture() throws Exception {
+
+		CompletableFuture<String> delegateFuture = new CompletableFuture<>();
+		CountingLookupService lookupService = new CountingLookupService(new CountDownLatch(0), delegateFuture);
+
+		LookupService coalescingLookupService = Decorator.of(lookupService, LookupService.class)
+				.with(new CoalescingInvocationHandler<>())
+				.make();
+
+		List<CompletableFuture<String>> futures = new ArrayList<>();
+		for (int i = 0; i < 5; i++)
+			futures.add(coalescingLookupService.lookupAsync("key"));
+
+		delegateFuture.complete("async-value");
+
+		for (CompletableFuture<String> future : futures)
+			assertThat(future.get(), equalTo("async-value"));
+
+		assertThat(lookupService.lookupAsyncCount.get(), equalTo(1));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test(timeout = 10_000)
+	public void testReentrantCallIsNotCoalescedWithItself() throws Exception {
+
+		ReentrantLookupService lookupService = new ReentrantLookupService();
+
+		LookupService coalescingLookupService = Decorator.of(lookupService, LookupService.class)
+				.with(new CoalescingInvocationHandler<>())
+				.make();
+
+		lookupService.self = coalescingLookupService;
+
+		assertThat(coalescingLookupService.lookup("key"), equalTo("value-value-key"));
+		assertThat(lookupService.lookupCount.get(), equalTo(2));
+	}
+
+	public interface LookupService {
+
+		@Idempotent
+		String lookup(String key) throws InterruptedException;
+
+		@Idempotent
+		CompletableFuture<String> lookupAsync(String key);
+	}
+
+	public static class CountingLookupService implements LookupService {
+
+		final AtomicInteger lookupCount = new AtomicInteger();
+		final AtomicInteger lookupAsyncCount = new AtomicInteger();
+
+		private final CountDownLatch release;
+		private final CompletableFuture<String> asyncResult;
+
+		CountingLookupService(CountDownLatch release, CompletableFuture<String> asyncResult) {
+			this.release = release;
+			this.asyncResult = asyncResult;
+		}
+
+		@Override
+		public String lookup(String key) throws InterruptedException {
+			lookupCount.incrementAndGet();
+			release.await();
+			return "value-" + key;
+		}
+
+		@Override
+		public CompletableFuture<String> lookupAsync(String key) {
+			lookupAsyncCount.incrementAndGet();
+			return asyncResult;
+		}
+	}
+
+	public static class ReentrantLookupService implements LookupService {
+
+		final AtomicInteger lookupCount = new AtomicInteger();
+
+		LookupService self;
+
+		@Override
+		public String lookup(String key) throws InterruptedException {
+			return lookupCount.incrementAndGet() == 1 ? "value-" + self.lookup(key) : "value-" + key;
+		}
+
+		@Override
+		public CompletableFuture<String> lookupAsync(String key) {
+			return CompletableFuture.completedFuture(key);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.Decorator;
+
+public class ConcurrencyLimitInvocationHandlerTest {
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testCallOverLimitIsRejected() throws Exception {
+
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Callable<String> callable = () -> {
+			entered.countDown();
+			release.await();
+			return "done";
+		};
+
+		Callable<String> limitedCallable = Decorator.of(callable, Callable.class)
+				.with(ConcurrencyLimitInvocationHandler.<Callable>builder()
+						.initialLimit(1)
+						.maxLimit(1)
+						.maxWait(10, MILLISECONDS)
+						.build())
+				.make();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> result = executor.submit(limitedCallable);
+			entered.await();
+
+			try {
+				limitedCallable.call();
+				throw new AssertionError("Call over the concurrency limit should have been rejected");
+			} catch (RejectedExecutionException e) {
+			}
+
+			release.countDown();
+			assertThat(result.get(), equalTo("done"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testPerMethodLimitShrinksOnSlowCalls() {
+
+		ConcurrencyLimitInvocationHandler<List> handler = ConcurrencyLimitInvocationHandler.<List>builder()
+				.initialLimit(20)
+				.latencyThreshold(0, NANOSECONDS)
+				.backoffRatio(0.5)
+				.limit("add", 10)
+				.build();
+
+		List<String> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(handler)
+				.make();
+
+		list.add("aaa");
+		list.add("bbb");
+		list.add("ccc");
+
+		assertThat(handler.getLimit("add").getLimit(), equalTo(1));
+		assertThat(handler.getLimit("add").getInFlight(), equalTo(0));
+		assertThat(handler.getLimit("size").getLimit(), equalTo(20));
+	}
+}
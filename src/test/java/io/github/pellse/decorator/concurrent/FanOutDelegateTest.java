@@ -0,0 +1,121 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.Decorator;
+import io.github.pellse.decorator.concurrent.FanOutDelegate.Policy;
+
+public class FanOutDelegateTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testDelegatesAreInvokedInParallel() {
+
+		CyclicBarrier barrier = new CyclicBarrier(2);
+
+		Map<String, Integer> primary = new HashMap<>();
+		Map<String, Integer> secondary = new HashMap<>();
+
+		Map<String, Integer> map = Decorator.of(FanOutDelegate.builder(Map.class, awaiting(barrier, primary), awaiting(barrier, secondary))
+					.reducer("size", Integer::sum)
+					.build(), Map.class)
+				.make();
+
+		assertThat(map.put("aaa", 1), equalTo(null));
+		assertThat(map.put("aaa", 2), equalTo(1));
+		assertThat(map.size(), equalTo(2));
+
+		assertThat(primary.get("aaa"), equalTo(2));
+		assertThat(secondary.get("aaa"), equalTo(2));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testFirstSuccessPolicy() {
+
+		Supplier<String> failing = () -> {
+			throw new IllegalStateException("unavailable");
+		};
+
+		Supplier<String> supplier = FanOutDelegate.builder(Supplier.class, failing, () -> "aaa")
+				.policy("get", Policy.FIRST_SUCCESS)
+				.build();
+
+		assertThat(supplier.get(), equalTo("aaa"));
+
+		Supplier<String> allFailing = FanOutDelegate.builder(Supplier.class, failing, failing)
+				.defaultPolicy(Policy.FIRST_SUCCESS)
+				.build();
+
+		try {
+			allFailing.get();
+			throw new AssertionError("Call should have failed when every delegate failed");
+		} catch (IllegalStateException e) {
+			assertThat(e.getSuppressed().length, equalTo(1));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Integer> awaiting(CyclicBarrier barrier, Map<String, Integer> map) {
+		return Decorator.of(map, Map.class)
+				.with((delegate, method, args) -> {
+					if (method.getName().equals("put"))
+						barrier.await(5, SECONDS);
+
+					return method.invoke(delegate, args);
+				})
+				.make();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testFirstSuccessDoesNotWaitForSlowFirstDelegate() {
+
+		CountDownLatch callerReturned = new CountDownLatch(1);
+		AtomicBoolean primaryReturned = new AtomicBoolean();
+
+		Supplier<String> slowPrimary = () -> {
+			try {
+				callerReturned.await(5, SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			primaryReturned.set(true);
+			return "primary";
+		};
+
+		Supplier<String> supplier = FanOutDelegate.builder(Supplier.class, slowPrimary, () -> "secondary")
+				.policy("get", Policy.FIRST_SUCCESS)
+				.build();
+
+		assertThat(supplier.get(), equalTo("secondary"));
+		assertThat(primaryReturned.get(), equalTo(false));
+		callerReturned.countDown();
+	}
+}
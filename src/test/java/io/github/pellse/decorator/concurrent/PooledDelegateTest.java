@@ -0,0 +1,152 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.Decorator;
+
+public class PooledDelegateTest {
+
+	@Test
+	public void testInstancesAreNeverUsedConcurrently() throws Exception {
+
+		AtomicInteger createdCount = new AtomicInteger();
+		Codec codec = Decorator.of(PooledDelegate.builder(Codec.class, () -> {
+					createdCount.incrementAndGet();
+					return new NonThreadSafeCodec();
+				})
+				.maxSize(2)
+				.build(), Codec.class)
+				.make();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				String value = "value" + i;
+				results.add(executor.submit(() -> codec.encode(value)));
+			}
+
+			for (int i = 0; i < results.size(); i++)
+				assertThat(results.get(i).get(), equalTo("[value" + i + "]"));
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(createdCount.get(), lessThanOrEqualTo(2));
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testBorrowTimesOutWhenPoolIsExhausted() throws Throwable {
+
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Codec codec = PooledDelegate.builder(Codec.class, () -> (Codec) value -> {
+					entered.countDown();
+					release.await();
+					return value;
+				})
+				.maxSize(1)
+				.maxWait(10, MILLISECONDS)
+				.build();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(() -> codec.encode("aaa"));
+			entered.await();
+			codec.encode("bbb");
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testThreadsReuseTheirLastUsedInstance() throws Exception {
+
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger instanceCount = new AtomicInteger();
+
+		Codec codec = PooledDelegate.builder(Codec.class, () -> {
+					int instanceId = instanceCount.incrementAndGet();
+					return (Codec) value -> {
+						if (value.equals("block")) {
+							entered.countDown();
+							release.await();
+						}
+						return value + instanceId;
+					};
+				})
+				.maxSize(2)
+				.build();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> blocked = executor.submit(() -> codec.encode("block"));
+			entered.await();
+
+			assertThat(codec.encode("aaa"), equalTo("aaa2"));
+
+			release.countDown();
+			assertThat(blocked.get(), equalTo("block1"));
+			assertThat(executor.submit(() -> codec.encode("bbb")).get(), equalTo("bbb1"));
+			assertThat(codec.encode("ccc"), equalTo("ccc2"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public interface Codec {
+		String encode(String value) throws InterruptedException;
+	}
+
+	public static class NonThreadSafeCodec implements Codec {
+
+		private final AtomicBoolean inUse = new AtomicBoolean();
+		private final StringBuilder buffer = new StringBuilder();
+
+		@Override
+		public String encode(String value) {
+			if (!inUse.compareAndSet(false, true))
+				throw new IllegalStateException("Codec used concurrently");
+
+			try {
+				buffer.setLength(0);
+				return buffer.append('[').append(value).append(']').toString();
+			} finally {
+				inUse.set(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.Decorator;
+
+public class ShardedDelegateTest {
+
+	@Test
+	public void testCallsAreRoutedByKeyAndReduced() {
+
+		List<MapStore> shards = new ArrayList<>();
+
+		Store store = ShardedDelegate.builder(Store.class, () -> {
+					MapStore shard = new MapStore();
+					shards.add(shard);
+					return shard;
+				})
+				.shards(4)
+				.key("put", args -> args[0])
+				.key("get", args -> args[0])
+				.key("containsKey", args -> args[0])
+				.reducer("size", Integer::sum)
+				.reducer("isEmpty", (Boolean empty1, Boolean empty2) -> empty1 && empty2)
+				.build();
+
+		assertThat(store.isEmpty(), is(true));
+
+		for (int i = 0; i < 100; i++)
+			store.put("key" + i, i);
+
+		assertThat(store.size(), equalTo(100));
+		assertThat(store.isEmpty(), is(false));
+		assertThat(store.get("key42"), equalTo(42));
+		assertThat(store.containsKey("key99"), is(true));
+
+		assertThat(shards.size(), equalTo(4));
+		shards.forEach(shard -> assertThat(shard.isEmpty(), is(false)));
+		assertThat(shards.stream().filter(shard -> shard.containsKey("key42")).count(), equalTo(1L));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnroutedMethodsFailFast() {
+		ShardedDelegate.builder(Map.class, HashMap::new)
+				.key("put", args -> args[0])
+				.key("get", args -> args[0])
+				.reducer("size", Integer::sum)
+				.build();
+	}
+
+	@Test
+	public void testThreadAffinityIsExplicit() {
+
+		Buffer buffer = ShardedDelegate.builder(Buffer.class, ListBuffer::new)
+				.shards(8)
+				.threadAffinity("append")
+				.threadAffinity("drain")
+				.build();
+
+		buffer.append("aaa");
+		buffer.append("bbb");
+
+		assertThat(buffer.drain(), equalTo(asList("aaa", "bbb")));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testShardKeyAnnotation() {
+
+		Counters counters = Decorator.of(ShardedDelegate.builder(Counters.class, MapCounters::new)
+					.shards(8)
+					.reducer("total", Long::sum)
+					.build(), Counters.class)
+				.make();
+
+		for (int i = 0; i < 10; i++) {
+			counters.increment("aaa");
+			counters.increment("bbb");
+		}
+		counters.increment("ccc");
+
+		assertThat(counters.get("aaa"), equalTo(10L));
+		assertThat(counters.get("bbb"), equalTo(10L));
+		assertThat(counters.total(), equalTo(21L));
+	}
+
+	public interface Store {
+
+		Integer put(String key, Integer value);
+
+		Integer get(String key);
+
+		boolean containsKey(String key);
+
+		int size();
+
+		boolean isEmpty();
+	}
+
+	public static class MapStore implements Store {
+
+		private final Map<String, Integer> map = new HashMap<>();
+
+		@Override
+		public Integer put(String key, Integer value) {
+			return map.put(key, value);
+		}
+
+		@Override
+		public Integer get(String key) {
+			return map.get(key);
+		}
+
+		@Override
+		public boolean containsKey(String key) {
+			return map.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return map.isEmpty();
+		}
+	}
+
+	public interface Buffer {
+
+		void append(String value);
+
+		List<String> drain();
+	}
+
+	public static class ListBuffer implements Buffer {
+
+		private final List<String> values = new ArrayList<>();
+
+		@Override
+		public void append(String value) {
+			values.add(value);
+		}
+
+		@Override
+		public List<String> drain() {
+			List<String> drained = new ArrayList<>(values);
+			values.clear();
+			return drained;
+		}
+	}
+
+	public interface Counters {
+
+		void increment(@ShardKey String name);
+
+		long get(@ShardKey String name);
+
+		long total();
+	}
+
+	public static class MapCounters implements Counters {
+
+		private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+		@Override
+		public void increment(String name) {
+			counters.computeIfAbsent(name, key -> new LongAdder()).increment();
+		}
+
+		@Override
+		public long get(String name) {
+			LongAdder counter = counters.get(name);
+			return counter != null ? counter.sum() : 0;
+		}
+
+		@Override
+		public long total() {
+			return counters.values().stream().mapToLong(LongAdder::sum).sum();
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.concurrent;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.Decorator;
+
+public class WriteBehindInvocationHandlerTest {
+
+	@Test
+	public void testVoidMethodsAreFlushedInOrder() {
+
+		try (WriteBehindInvocationHandler<AuditLog> handler = new WriteBehindInvocationHandler<>()) {
+			AsyncAuditLog auditLog = Decorator.of(new SlowAuditLog(), AuditLog.class)
+					.with(handler, AsyncAuditLog.class)
+					.make();
+
+			auditLog.log("aaa");
+			auditLog.log("bbb");
+			boolean published = auditLog.publish("ccc");
+			auditLog.flush();
+
+			assertThat(published, is(false));
+			assertThat(auditLog.entries(), contains("aaa", "bbb", "event:ccc"));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAsynchronousFailureIsReportedOnFlush() {
+
+		try (WriteBehindInvocationHandler<AuditLog> handler = new WriteBehindInvocationHandler<>(2)) {
+			AsyncAuditLog auditLog = Decorator.of(new SlowAuditLog(), AuditLog.class)
+					.with(handler, AsyncAuditLog.class)
+					.make();
+
+			auditLog.log(null);
+			assertThat(auditLog.entries(), empty());
+
+			auditLog.flush();
+		}
+	}
+
+	@Test
+	public void testWorkerIsStoppedWhenCloseReportsFailure() throws Exception {
+
+		Thread[] worker = new Thread[1];
+		WriteBehindInvocationHandler<AuditLog> handler = new WriteBehindInvocationHandler<>(1, runnable -> worker[0] = new Thread(runnable));
+
+		AsyncAuditLog auditLog = Decorator.of(new SlowAuditLog(), AuditLog.class)
+				.with(handler, AsyncAuditLog.class)
+				.make();
+
+		auditLog.log(null);
+		try {
+			handler.close();
+			throw new AssertionError("Pending asynchronous failure should have been reported on close");
+		} catch (IllegalStateException e) {
+		}
+
+		assertThat(worker[0].isAlive(), is(false));
+	}
+
+	@Test(timeout = 10_000)
+	public void testWorkerKeepsDrainingWhenInterrupted() {
+
+		Thread[] worker = new Thread[1];
+		WriteBehindInvocationHandler<AuditLog> handler = new WriteBehindInvocationHandler<>(4, runnable -> worker[0] = new Thread(runnable));
+
+		AsyncAuditLog auditLog = Decorator.of(new SlowAuditLog(), AuditLog.class)
+				.with(handler, AsyncAuditLog.class)
+				.make();
+
+		auditLog.log("aaa");
+		worker[0].interrupt();
+		auditLog.log("bbb");
+		worker[0].interrupt();
+		auditLog.flush();
+
+		assertThat(auditLog.entries(), contains("aaa", "bbb"));
+		assertThat(worker[0].isAlive(), is(true));
+
+		worker[0].interrupt();
+		handler.close();
+
+		assertThat(worker[0].isAlive(), is(false));
+	}
+
+	public interface AuditLog {
+
+		void log(String entry);
+
+		@FireAndForget
+		boolean publish(String event);
+
+		List<String> entries();
+	}
+
+	public interface AsyncAuditLog extends AuditLog, WriteBehind {
+	}
+
+	public static class SlowAuditLog implements AuditLog {
+
+		private final List<String> entries = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void log(String entry) {
+			if (entry == null)
+				throw new IllegalArgumentException("entry cannot be null");
+
+			sleep();
+			entries.add(entry);
+		}
+
+		@Override
+		public boolean publish(String event) {
+			sleep();
+			return entries.add("event:" + event);
+		}
+
+		@Override
+		public List<String> entries() {
+			return entries;
+		}
+
+		private static void sleep() {
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
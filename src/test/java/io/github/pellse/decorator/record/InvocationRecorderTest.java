@@ -0,0 +1,173 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.record;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.pellse.decorator.Decorator;
+import io.github.pellse.decorator.collection.SafeList;
+
+public class InvocationRecorderTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testRecordAndReplay() throws Exception {
+
+		Path journal = temporaryFolder.newFile("list.journal").toPath();
+
+		try (InvocationRecorder<List> recorder = new InvocationRecorder<>(journal, List.class, 4096)) {
+			List<String> list = Decorator.of(new ArrayList<>(), List.class)
+					.with(recorder)
+					.make();
+
+			list.add("aaa");
+			list.add("bbb");
+			list.add(0, "ccc");
+			list.remove("bbb");
+
+			try {
+				list.get(10);
+			} catch (IndexOutOfBoundsException e) {
+			}
+
+			assertThat(recorder.getRecordedCount(), equalTo(5L));
+		}
+
+		List<String> replayedList = Decorator.of(new ArrayList<>(), List.class)
+				.with(SafeList.class)
+				.make();
+
+		ReplayResult result = new InvocationReplayer<>(journal, List.class).replay(replayedList, ReplayMode.MAXIMUM_SPEED);
+
+		assertThat(result.getInvocationCount(), equalTo(5L));
+		assertThat(result.getMismatchCount(), equalTo(0L));
+		assertThat(replayedList, contains("ccc", "aaa"));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testInvocationsOverCapacityAreDropped() throws Exception {
+
+		Path journal = temporaryFolder.newFile("small.journal").toPath();
+
+		try (InvocationRecorder<List> recorder = new InvocationRecorder<>(journal, List.class, 64)) {
+			List<String> list = Decorator.of(new ArrayList<>(), List.class)
+					.with(recorder)
+					.make();
+
+			for (int i = 0; i < 10; i++)
+				list.add("aaa");
+
+			assertThat(list.size(), equalTo(10));
+			assertThat(recorder.getRecordedCount() + recorder.getDroppedCount(), equalTo(11L));
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testRecordingFailuresDoNotReachCaller() throws Exception {
+
+		Path journal = temporaryFolder.newFile("failures.journal").toPath();
+		String longString = String.join("", Collections.nCopies(70_000, "a"));
+
+		try (InvocationRecorder<List> recorder = new InvocationRecorder<>(journal, List.class, 1024 * 1024, FailingSerializable.class)) {
+			List<Object> list = Decorator.of(new ArrayList<>(), List.class)
+					.with(recorder)
+					.make();
+
+			list.add(longString);
+			list.add(new FailingSerializable());
+
+			assertThat(recorder.getRecordedCount(), equalTo(1L));
+			assertThat(recorder.getDroppedCount(), equalTo(1L));
+			assertThat(list.size(), equalTo(2));
+		}
+
+		List<Object> replayedList = new ArrayList<>();
+		new InvocationReplayer<>(journal, List.class).replay(replayedList, ReplayMode.MAXIMUM_SPEED);
+
+		assertThat(replayedList, contains(longString));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testOnlyAllowedTypesAreSerialized() throws Exception {
+
+		Path journal = temporaryFolder.newFile("allowed.journal").toPath();
+		Date date = new Date(0);
+
+		try (InvocationRecorder<List> recorder = new InvocationRecorder<>(journal, List.class, 4096, Date.class)) {
+			List<Object> list = Decorator.of(new ArrayList<>(), List.class)
+					.with(recorder)
+					.make();
+
+			list.add(date);
+			list.add(new StringBuilder("aaa"));
+
+			assertThat(recorder.getRecordedCount(), equalTo(2L));
+		}
+
+		List<Object> replayedList = new ArrayList<>();
+		new InvocationReplayer<>(journal, List.class, Date.class).replay(replayedList, ReplayMode.MAXIMUM_SPEED);
+
+		assertThat(replayedList, contains(equalTo(date), nullValue()));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Test(expected = InvalidClassException.class)
+	public void testReplayRejectsTypesThatAreNotAllowed() throws Exception {
+
+		Path journal = temporaryFolder.newFile("rejected.journal").toPath();
+
+		try (InvocationRecorder<List> recorder = new InvocationRecorder<>(journal, List.class, 4096, Date.class)) {
+			List<Object> list = Decorator.of(new ArrayList<>(), List.class)
+					.with(recorder)
+					.make();
+
+			list.add(new Date(0));
+		}
+
+		new InvocationReplayer<>(journal, List.class).replay(new ArrayList<>(), ReplayMode.MAXIMUM_SPEED);
+	}
+
+	static class FailingSerializable implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private void writeObject(ObjectOutputStream out) {
+			throw new IllegalStateException("Cannot serialize");
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.trace;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import io.github.pellse.decorator.Decorator;
+import io.github.pellse.decorator.collection.SafeList;
+import io.github.pellse.decorator.trace.TraceRecord.LayerTiming;
+
+public class TracerTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testLayerTimingsOfSampledCall() {
+
+		Tracer tracer = new Tracer(1.0);
+
+		List<String> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(tracer.layer("ArrayList"))
+				.with(SafeList.class)
+				.with(tracer.layer("SafeList"))
+				.make();
+
+		list.add("aaa");
+
+		List<TraceRecord> records = tracer.dump();
+		assertThat(records, hasSize(1));
+
+		TraceRecord traceRecord = records.get(0);
+		List<LayerTiming> layerTimings = traceRecord.getLayerTimings();
+
+		assertThat(traceRecord.getMethodName(), equalTo("add"));
+		assertThat(layerTimings.stream().map(LayerTiming::getLayerName).collect(Collectors.toList()), contains("SafeList", "ArrayList"));
+		assertThat(layerTimings.get(0).getDownstreamNanos(), greaterThanOrEqualTo(layerTimings.get(1).getTotalNanos()));
+		assertThat(layerTimings.get(0).getDownstreamNanos(),
+				lessThanOrEqualTo(layerTimings.get(1).getTotalNanos() + Tracer.getDispatchOverheadNanos()));
+		assertThat(layerTimings.get(1).getSelfNanos(), equalTo(layerTimings.get(1).getTotalNanos()));
+		assertThat(layerTimings.get(0).getSelfNanos(), lessThanOrEqualTo(layerTimings.get(0).getTotalNanos()));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSampleRate() {
+
+		Tracer tracer = new Tracer(0.25);
+
+		List<String> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(tracer.layer("ArrayList"))
+				.with(SafeList.class)
+				.with(tracer.layer("SafeList"))
+				.make();
+
+		for (int i = 0; i < 20; i++)
+			list.add("aaa");
+
+		assertThat(tracer.dump(), hasSize(5));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testNoSampling() {
+
+		Tracer tracer = new Tracer(0);
+
+		List<String> list = Decorator.of(new ArrayList<>(), List.class)
+				.with(tracer.layer("ArrayList"))
+				.make();
+
+		list.add("aaa");
+
+		assertThat(tracer.dump(), empty());
+	}
+}
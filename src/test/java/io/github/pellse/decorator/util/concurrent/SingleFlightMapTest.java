@@ -0,0 +1,91 @@
+/**
+ * Copyright 2016 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pellse.decorator.util.concurrent;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightMapTest {
+
+	@Test
+	public void testMappingFunctionRunsOnceUnderContention() throws Exception {
+
+		int nbThreads = 16;
+		SingleFlightMap<String, Integer> map = new SingleFlightMap<>();
+		AtomicInteger computeCount = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+		try {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int i = 0; i < nbThreads; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return map.computeIfAbsent("key", key -> {
+						computeCount.incrementAndGet();
+						sleep(50);
+						return key.length();
+					});
+				}));
+			}
+
+			start.countDown();
+			for (Future<Integer> future : futures)
+				assertThat(future.get(), equalTo(3));
+
+			assertThat(computeCount.get(), equalTo(1));
+			assertThat(map.size(), equalTo(1));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFailedComputationIsRetried() {
+
+		SingleFlightMap<String, Integer> map = new SingleFlightMap<>();
+
+		try {
+			map.computeIfAbsent("key", key -> {
+				throw new IllegalStateException("failed");
+			});
+			throw new AssertionError("Computation failure should have been propagated");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), equalTo("failed"));
+		}
+
+		assertThat(map.size(), equalTo(0));
+		assertThat(map.computeIfAbsent("key", String::length), equalTo(3));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}